@@ -1,27 +1,35 @@
 package ai.startup.usuario;
 
-import ai.startup.usuario.auth.JwtService;
+import ai.startup.usuario.security.RateLimiter;
 import ai.startup.usuario.security.SecurityFilter;
+import ai.startup.usuario.security.VerifiedTokenCache;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import io.swagger.v3.oas.models.OpenAPI;
 import io.swagger.v3.oas.models.Components;
 import io.swagger.v3.oas.models.security.SecurityScheme;
 import io.swagger.v3.oas.models.security.SecurityRequirement;
 
 @SpringBootApplication
+@EnableScheduling
 public class UsuarioApplication {
     public static void main(String[] args) {
         SpringApplication.run(UsuarioApplication.class, args);
     }
     
     @Bean
-    public FilterRegistrationBean<SecurityFilter> securityFilter(JwtService jwtService) {
+    public FilterRegistrationBean<SecurityFilter> securityFilter(VerifiedTokenCache tokenCache, RateLimiter rateLimiter,
+                                                                 Environment env) {
         FilterRegistrationBean<SecurityFilter> reg = new FilterRegistrationBean<>();
-        reg.setFilter(new SecurityFilter(jwtService)); // usa o que você já enviou
+        // /stripe-stub/** só é público quando o stand-in do Stripe existe
+        boolean stripeStub = env.acceptsProfiles(Profiles.of("stripe-stub"));
+        reg.setFilter(new SecurityFilter(tokenCache, rateLimiter, stripeStub)); // usa o que você já enviou
         reg.addUrlPatterns("/*");
         reg.setOrder(1);
         return reg;
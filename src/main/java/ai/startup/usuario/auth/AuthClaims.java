@@ -0,0 +1,15 @@
+package ai.startup.usuario.auth;
+
+import java.time.Instant;
+
+/**
+ * Claims já validados de um JWT (o que o SecurityFilter precisa por request)
+ */
+public record AuthClaims(
+        String email,
+        String permissao,          // USER | ADMIN
+        Instant expiresAt,         // "exp" do token
+        String userId,             // "uid" (null em tokens antigos)
+        boolean premium,           // "premium" no momento da emissão
+        long entitlementVersion    // "ev": versão do premium na emissão
+) {}
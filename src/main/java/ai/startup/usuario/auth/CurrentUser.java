@@ -0,0 +1,64 @@
+package ai.startup.usuario.auth;
+
+import ai.startup.usuario.usuario.Usuario;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.annotation.RequestScope;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Usuário autenticado do request atual.
+ *
+ * id() vem do claim "uid" do JWT (sem banco). get() carrega o usuário projetado
+ * (id, email, nome, sobrenome, permissão) no máximo uma vez por request e
+ * compartilha o resultado com todos os controllers/services que pedirem.
+ */
+@Component
+@RequestScope
+public class CurrentUser {
+
+    private final HttpServletRequest request;
+    private final MongoTemplate mongoTemplate;
+
+    private Usuario user; // carregado sob demanda
+
+    public CurrentUser(HttpServletRequest request, MongoTemplate mongoTemplate) {
+        this.request = request;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /** Email do token; 401 se o request não for autenticado */
+    public String email() {
+        String email = (String) request.getAttribute("authEmail");
+        if (email == null || email.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Não autenticado");
+        }
+        return email.toLowerCase();
+    }
+
+    /** Id do usuário: do token quando disponível, senão do usuário carregado (tokens antigos) */
+    public String id() {
+        String uid = (String) request.getAttribute("authUserId");
+        return uid != null ? uid : get().getId();
+    }
+
+    /** Usuário projetado (id, email, nome, sobrenome, permissao); 404 se não existir mais */
+    public Usuario get() {
+        if (user == null) {
+            String uid = (String) request.getAttribute("authUserId");
+            Query query = new Query(uid != null
+                    ? Criteria.where("_id").is(uid)
+                    : Criteria.where("email").is(email()));
+            query.fields().include("email").include("nome").include("sobrenome").include("permissao");
+            user = mongoTemplate.findOne(query, Usuario.class);
+            if (user == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado");
+            }
+        }
+        return user;
+    }
+}
@@ -0,0 +1,159 @@
+package ai.startup.usuario.auth;
+
+import ai.startup.usuario.cache.CacheRegion;
+import ai.startup.usuario.cache.InvalidationBus;
+import ai.startup.usuario.metrics.MetricsSource;
+import ai.startup.usuario.usuario.Usuario;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estado premium atual por usuário, para autorizar recursos premium sem ler o Mongo a cada request.
+ *
+ * O JWT carrega premium + "ev" (entitlementVersion) da emissão. Aqui guardamos a versão mais
+ * recente conhecida: atualizada na hora pelos fluxos que mudam premium nesta instância,
+ * descartada quando outra instância avisa pelo InvalidationBus e revalidada no Mongo
+ * (leitura projetada) no máximo uma vez por ttl-seconds por usuário. Token com ev menor que o cache está
+ * desatualizado e o valor do cache prevalece.
+ */
+@Component
+public class EntitlementCache implements MetricsSource {
+
+    /** Estado premium conhecido; loadedAt em nanos (System.nanoTime) */
+    public record Entitlement(boolean premium, long version, long loadedAt) {}
+
+    /** Resultado para o request: premium efetivo e se o JWT está desatualizado */
+    public record Resolved(boolean premium, long version, boolean tokenStale) {}
+
+    private final MongoTemplate mongoTemplate;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, Entitlement> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder staleTokens = new LongAdder();
+
+    private final InvalidationBus bus;
+
+    public EntitlementCache(MongoTemplate mongoTemplate,
+                            InvalidationBus bus,
+                            @Value("${security.entitlements.ttl-seconds:60}") long ttlSeconds,
+                            @Value("${security.entitlements.max-entries:10000}") int maxEntries) {
+        this.mongoTemplate = mongoTemplate;
+        this.bus = bus;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        this.maxEntries = maxEntries;
+        // mudança de premium feita em outra instância: próxima consulta recarrega
+        bus.subscribe(CacheRegion.ENTITLEMENT, ids -> ids.forEach(entries::remove), entries::clear);
+    }
+
+    /**
+     * Premium efetivo do usuário autenticado (atributos colocados pelo SecurityFilter)
+     */
+    public Resolved resolve(HttpServletRequest req) {
+        String userId = (String) req.getAttribute("authUserId");
+        if (userId == null) {
+            // token emitido antes dos claims de premium: resolve pelo email
+            String email = (String) req.getAttribute("authEmail");
+            Entitlement e = loadByEmail(email);
+            return new Resolved(e.premium(), e.version(), true);
+        }
+        Long tokenVersion = (Long) req.getAttribute("authEntitlementVersion");
+        Boolean tokenPremium = (Boolean) req.getAttribute("authPremium");
+        return resolve(userId, Boolean.TRUE.equals(tokenPremium), tokenVersion == null ? 0L : tokenVersion);
+    }
+
+    public Resolved resolve(String userId, boolean tokenPremium, long tokenVersion) {
+        long now = System.nanoTime();
+        Entitlement e = entries.get(userId);
+        if (e == null || now - e.loadedAt() > ttlNanos) {
+            e = load(userId, now);
+        } else {
+            hits.increment();
+            if (tokenVersion > e.version()) {
+                // token mais novo que o cache (mudança feita em outra instância): o token vale
+                e = put(userId, new Entitlement(tokenPremium, tokenVersion, e.loadedAt()));
+            }
+        }
+        boolean stale = tokenVersion < e.version();
+        if (stale) staleTokens.increment();
+        return new Resolved(e.premium(), e.version(), stale);
+    }
+
+    /**
+     * Registra o novo estado após uma mudança de premium (upgrade, pagamento, cancelamento)
+     */
+    public void update(Usuario u) {
+        if (u == null || u.getId() == null) return;
+        put(u.getId(), new Entitlement(Boolean.TRUE.equals(u.getIsPremium()),
+                u.getEntitlementVersion() == null ? 0L : u.getEntitlementVersion(), System.nanoTime()));
+        bus.publish(CacheRegion.ENTITLEMENT, u.getId());
+    }
+
+    public void invalidate(String userId) {
+        if (userId == null) return;
+        entries.remove(userId);
+        bus.publish(CacheRegion.ENTITLEMENT, userId);
+    }
+
+    private Entitlement load(String userId, long now) {
+        loads.increment();
+        Query query = new Query(Criteria.where("_id").is(userId));
+        query.fields().include("isPremium").include("entitlementVersion");
+        Usuario u = mongoTemplate.findOne(query, Usuario.class);
+        Entitlement e = toEntitlement(u, now);
+        return u == null ? e : put(userId, e);
+    }
+
+    private Entitlement loadByEmail(String email) {
+        loads.increment();
+        Query query = new Query(Criteria.where("email").is(email == null ? null : email.toLowerCase()));
+        query.fields().include("isPremium").include("entitlementVersion");
+        return toEntitlement(mongoTemplate.findOne(query, Usuario.class), System.nanoTime());
+    }
+
+    private static Entitlement toEntitlement(Usuario u, long now) {
+        if (u == null) return new Entitlement(false, 0L, now);
+        return new Entitlement(Boolean.TRUE.equals(u.getIsPremium()),
+                u.getEntitlementVersion() == null ? 0L : u.getEntitlementVersion(), now);
+    }
+
+    private Entitlement put(String userId, Entitlement e) {
+        if (entries.size() >= maxEntries && !entries.containsKey(userId)) {
+            // cheio: descarta ~10% arbitrários (serão recarregados sob demanda)
+            int target = maxEntries - Math.max(1, maxEntries / 10);
+            var it = entries.keySet().iterator();
+            while (entries.size() > target && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        // nunca regride para uma versão menor (update concorrente com load)
+        return entries.merge(userId, e, (old, neu) -> neu.version() >= old.version() ? neu : old);
+    }
+
+    @Override
+    public String metricsName() {
+        return "entitlements";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("size", entries.size());
+        m.put("hits", hits.sum());
+        m.put("loads", loads.sum());
+        m.put("staleTokens", staleTokens.sum());
+        return m;
+    }
+}
@@ -2,6 +2,7 @@ package ai.startup.usuario.auth;
 
 import ai.startup.usuario.usuario.Usuario;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
@@ -17,6 +18,7 @@ import java.util.Map;
 public class JwtService {
 
     private final Key key;
+    private final JwtParser parser; // imutável e thread-safe: criado uma vez só
 
     public JwtService(@Value("${jwt.secret}") String secretBase64) {
         if (secretBase64 == null || secretBase64.isBlank()) {
@@ -27,6 +29,7 @@ public class JwtService {
             throw new IllegalStateException("JWT secret too short. Use Base64 with >= 32 bytes.");
         }
         this.key = Keys.hmacShaKeyFor(bytes);
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
     }
 
     public String gerarToken(Usuario u) {
@@ -35,7 +38,10 @@ public class JwtService {
                 .setSubject(u.getEmail())
                 .addClaims(Map.of(
                         "email", u.getEmail(),
-                        "permissao", u.getPermissao() == null ? "USER" : u.getPermissao()
+                        "permissao", u.getPermissao() == null ? "USER" : u.getPermissao(),
+                        "uid", u.getId(),
+                        "premium", Boolean.TRUE.equals(u.getIsPremium()),
+                        "ev", u.getEntitlementVersion() == null ? 0L : u.getEntitlementVersion()
                 ))
                 .setIssuedAt(Date.from(now))
                 .setExpiration(Date.from(now.plusSeconds(6 * 60 * 60))) // 6h
@@ -44,7 +50,23 @@ public class JwtService {
     }
 
     public Claims validar(String token) {
-        return Jwts.parserBuilder().setSigningKey(key).build()
-                .parseClaimsJws(token).getBody();
+        return parser.parseClaimsJws(token).getBody();
+    }
+
+    /**
+     * Valida o token e extrai apenas os claims usados na autenticação
+     */
+    public AuthClaims extrair(String token) {
+        Claims claims = validar(token);
+        String permissao = claims.get("permissao", String.class);
+        Number ev = claims.get("ev", Number.class);
+        return new AuthClaims(
+                claims.get("email", String.class),
+                permissao == null ? "USER" : permissao,
+                claims.getExpiration() == null ? null : claims.getExpiration().toInstant(),
+                claims.get("uid", String.class),
+                Boolean.TRUE.equals(claims.get("premium", Boolean.class)),
+                ev == null ? 0L : ev.longValue()
+        );
     }
 }
\ No newline at end of file
@@ -0,0 +1,151 @@
+package ai.startup.usuario.auth;
+
+import ai.startup.usuario.metrics.MetricsSource;
+import jakarta.annotation.PreDestroy;
+import org.mindrot.jbcrypt.BCrypt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hash/verificação de senha (BCrypt) fora das threads do Tomcat.
+ *
+ * O trabalho roda num pool do tamanho dos cores com fila limitada; quando a fila enche
+ * a requisição falha na hora com 503 em vez de segurar uma thread de request esperando.
+ */
+@Component
+public class PasswordHasher implements MetricsSource {
+
+    private final int cost;
+    private final long timeoutMs;
+    private final ThreadPoolExecutor pool;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder hashCount = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final AtomicLong maxHashNanos = new AtomicLong();
+
+    public PasswordHasher(@Value("${security.bcrypt.cost:10}") int cost,
+                          @Value("${security.bcrypt.pool-size:0}") int poolSize,
+                          @Value("${security.bcrypt.queue-capacity:64}") int queueCapacity,
+                          @Value("${security.bcrypt.timeout-ms:5000}") long timeoutMs) {
+        if (cost < 4 || cost > 31) {
+            throw new IllegalStateException("security.bcrypt.cost deve estar entre 4 e 31.");
+        }
+        int threads = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        AtomicInteger seq = new AtomicInteger();
+        this.cost = cost;
+        this.timeoutMs = timeoutMs;
+        this.pool = new ThreadPoolExecutor(
+                threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "bcrypt-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    public String hash(String raw) {
+        return run(() -> BCrypt.hashpw(raw, BCrypt.gensalt(cost)));
+    }
+
+    public boolean matches(String raw, String hash) {
+        return run(() -> BCrypt.checkpw(raw, hash));
+    }
+
+    /**
+     * true se o hash foi gerado com um custo diferente do configurado (ex: "$2a$10$...")
+     */
+    public boolean needsRehash(String hash) {
+        if (hash == null || hash.length() < 7 || hash.charAt(0) != '$') return false;
+        int costStart = hash.indexOf('$', 1) + 1;
+        if (costStart <= 0 || costStart + 2 > hash.length()) return false;
+        try {
+            return Integer.parseInt(hash.substring(costStart, costStart + 2)) != cost;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private <T> T run(Callable<T> work) {
+        Future<T> future;
+        try {
+            future = pool.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    return work.call();
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    hashCount.increment();
+                    hashNanos.add(elapsed);
+                    maxHashNanos.accumulateAndGet(elapsed, Math::max);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Servidor ocupado. Tente novamente em instantes.");
+        }
+
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeouts.increment();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Servidor ocupado. Tente novamente em instantes.");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Requisição interrompida.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "bcrypt";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        long count = hashCount.sum();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("cost", cost);
+        m.put("poolSize", pool.getMaximumPoolSize());
+        m.put("active", pool.getActiveCount());
+        m.put("queueDepth", pool.getQueue().size());
+        m.put("queueRemaining", pool.getQueue().remainingCapacity());
+        m.put("completed", count);
+        m.put("rejected", rejected.sum());
+        m.put("timeouts", timeouts.sum());
+        m.put("avgHashMs", count == 0 ? 0.0 : hashNanos.sum() / 1e6 / count);
+        m.put("maxHashMs", maxHashNanos.get() / 1e6);
+        return m;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
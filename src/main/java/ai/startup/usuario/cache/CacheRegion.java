@@ -0,0 +1,10 @@
+package ai.startup.usuario.cache;
+
+/**
+ * Tipos de dado cacheado em memória que podem ser invalidados entre instâncias.
+ * As chaves são sempre o id do usuário.
+ */
+public enum CacheRegion {
+    USUARIO,       // UsuarioCache
+    ENTITLEMENT    // EntitlementCache (premium)
+}
@@ -0,0 +1,290 @@
+package ai.startup.usuario.cache;
+
+import ai.startup.usuario.metrics.MetricsSource;
+import com.mongodb.CursorType;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Barramento de invalidação de cache entre instâncias, sobre uma capped collection.
+ *
+ * Escritas chamam publish(região, id); as chaves ficam acumuladas (e deduplicadas) e a
+ * cada flush-ms viram uma mensagem compacta por região ({o: nó, r: região, k: [ids], t: data}).
+ * Cada instância lê a collection com um cursor tailable (funciona também em Mongo standalone,
+ * ao contrário de change streams) e repassa as chaves de outros nós aos caches inscritos.
+ * A instância que publicou já atualizou o próprio cache e ignora as próprias mensagens.
+ *
+ * O cursor não retoma por _id: ObjectId vem do relógio de cada nó e não ordena mensagens
+ * de nós diferentes. Ao (re)abrir, o cursor pula o que já estava na collection e só então
+ * pede aos inscritos que limpem tudo (onReset), o que cobre qualquer mensagem perdida
+ * enquanto ele esteve fechado. Na subida, uma collection existente que não seja capped é
+ * convertida.
+ */
+@Component
+public class InvalidationBus implements MetricsSource {
+
+    static final String COLLECTION = "cache_invalidations";
+    private static final int MAX_KEYS_PER_MESSAGE = 500;
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+    private final long cappedBytes;
+    private final long cappedDocs;
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+
+    private final Map<CacheRegion, List<Consumer<Collection<String>>>> listeners = new EnumMap<>(CacheRegion.class);
+    private final List<Runnable> resetListeners = new CopyOnWriteArrayList<>();
+    private final Map<CacheRegion, Set<String>> pending = new EnumMap<>(CacheRegion.class);
+
+    private volatile Thread tailer;
+    private volatile boolean running;
+
+    private final LongAdder publishedMessages = new LongAdder();
+    private final LongAdder publishedKeys = new LongAdder();
+    private final LongAdder coalescedKeys = new LongAdder();
+    private final LongAdder receivedMessages = new LongAdder();
+    private final LongAdder appliedKeys = new LongAdder();
+    private final LongAdder publishFailures = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder resets = new LongAdder();
+    private final LongAdder skippedOnOpen = new LongAdder();
+    private final AtomicLong lastLagMs = new AtomicLong();
+    private final AtomicLong maxLagMs = new AtomicLong();
+    private final LongAdder totalLagMs = new LongAdder();
+
+    public InvalidationBus(MongoTemplate mongoTemplate,
+                           @Value("${cache.bus.enabled:true}") boolean enabled,
+                           @Value("${cache.bus.capped-bytes:16777216}") long cappedBytes,
+                           @Value("${cache.bus.capped-docs:100000}") long cappedDocs) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+        this.cappedBytes = cappedBytes;
+        this.cappedDocs = cappedDocs;
+        for (CacheRegion r : CacheRegion.values()) {
+            listeners.put(r, new CopyOnWriteArrayList<>());
+            pending.put(r, new LinkedHashSet<>());
+        }
+    }
+
+    /**
+     * Registra um cache local: recebe as chaves invalidadas por outras instâncias e, quando
+     * mensagens podem ter sido perdidas (cursor reaberto), onReset para descartar tudo
+     */
+    public void subscribe(CacheRegion region, Consumer<Collection<String>> listener, Runnable onReset) {
+        listeners.get(region).add(listener);
+        resetListeners.add(onReset);
+    }
+
+    /**
+     * Agenda a invalidação da chave nas outras instâncias (enviada no próximo flush)
+     */
+    public void publish(CacheRegion region, String key) {
+        if (!enabled || key == null) return;
+        Set<String> keys = pending.get(region);
+        synchronized (keys) {
+            if (!keys.add(key)) coalescedKeys.increment();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cache.bus.flush-ms:100}")
+    public void flush() {
+        if (!enabled) return;
+        List<Document> messages = new ArrayList<>();
+        Date now = new Date();
+        for (CacheRegion r : CacheRegion.values()) {
+            Set<String> keys = pending.get(r);
+            List<String> batch;
+            synchronized (keys) {
+                if (keys.isEmpty()) continue;
+                batch = new ArrayList<>(keys);
+                keys.clear();
+            }
+            for (int i = 0; i < batch.size(); i += MAX_KEYS_PER_MESSAGE) {
+                List<String> chunk = batch.subList(i, Math.min(batch.size(), i + MAX_KEYS_PER_MESSAGE));
+                messages.add(new Document("o", nodeId).append("r", r.name()).append("k", new ArrayList<>(chunk)).append("t", now));
+                publishedKeys.add(chunk.size());
+            }
+        }
+        if (messages.isEmpty()) return;
+        try {
+            mongoTemplate.getCollection(COLLECTION).insertMany(messages);
+            publishedMessages.add(messages.size());
+        } catch (Exception e) {
+            // outras instâncias ficam desatualizadas até o TTL dos próprios caches
+            publishFailures.increment();
+            System.err.println("[CacheBus] Falha ao publicar " + messages.size() + " invalidações: " + e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) return;
+        try {
+            ensureCappedCollection();
+        } catch (Exception e) {
+            System.err.println("[CacheBus] Falha ao preparar " + COLLECTION + ": " + e.getMessage());
+        }
+        running = true;
+        tailer = new Thread(this::tailLoop, "cache-bus-tailer");
+        tailer.setDaemon(true);
+        tailer.start();
+        System.out.println("[CacheBus] Nó " + nodeId + " escutando " + COLLECTION);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (tailer != null) tailer.interrupt();
+        flush();
+    }
+
+    private void ensureCappedCollection() {
+        if (!mongoTemplate.collectionExists(COLLECTION)) {
+            mongoTemplate.createCollection(COLLECTION,
+                    CollectionOptions.empty().capped().size(cappedBytes).maxDocuments(cappedDocs));
+        } else if (!isCapped()) {
+            // criada sem capped (ex: insert antes da subida): cursor tailable falharia para sempre
+            System.out.println("[CacheBus] " + COLLECTION + " não é capped, convertendo");
+            mongoTemplate.executeCommand(new Document("convertToCapped", COLLECTION).append("size", cappedBytes));
+        }
+        MongoCollection<Document> coll = mongoTemplate.getCollection(COLLECTION);
+        // cursor tailable em collection vazia fecha na hora: garante um documento
+        if (coll.estimatedDocumentCount() == 0) {
+            coll.insertOne(new Document("o", nodeId).append("r", "INIT").append("k", List.of()).append("t", new Date()));
+        }
+    }
+
+    private boolean isCapped() {
+        Document info = mongoTemplate.getDb().listCollections()
+                .filter(new Document("name", COLLECTION)).first();
+        Document options = info != null ? info.get("options", Document.class) : null;
+        return options != null && Boolean.TRUE.equals(options.getBoolean("capped"));
+    }
+
+    private void tailLoop() {
+        while (running) {
+            MongoCollection<Document> coll = mongoTemplate.getCollection(COLLECTION);
+            try (MongoCursor<Document> cursor = coll.find()
+                    .cursorType(CursorType.TailableAwait)
+                    .maxAwaitTime(1, TimeUnit.SECONDS)
+                    .noCursorTimeout(true)
+                    .iterator()) {
+                // o que já estava lá é anterior a este cursor: em vez de aplicar, limpa os caches
+                long skipped = 0;
+                while (running && cursor.tryNext() != null) skipped++;
+                skippedOnOpen.add(skipped);
+                resetAll();
+                while (running) {
+                    Document doc = cursor.tryNext();
+                    if (doc == null) {
+                        if (cursor.getServerCursor() == null) break; // cursor morreu: reabre
+                        continue;
+                    }
+                    dispatch(doc);
+                }
+            } catch (Exception e) {
+                if (!running) return;
+                reconnects.increment();
+                System.err.println("[CacheBus] Cursor interrompido, reabrindo: " + e.getMessage());
+            }
+            sleep(1000);
+        }
+    }
+
+    private void resetAll() {
+        resets.increment();
+        for (Runnable r : resetListeners) {
+            try {
+                r.run();
+            } catch (Exception e) {
+                System.err.println("[CacheBus] Erro ao limpar cache local: " + e.getMessage());
+            }
+        }
+    }
+
+    private void dispatch(Document doc) {
+        if (nodeId.equals(doc.getString("o"))) return;
+        CacheRegion region;
+        try {
+            region = CacheRegion.valueOf(doc.getString("r"));
+        } catch (Exception e) {
+            return; // INIT ou região desconhecida (versão mais nova de outro nó)
+        }
+        receivedMessages.increment();
+        Date t = doc.getDate("t");
+        if (t != null) {
+            long lag = Math.max(0, System.currentTimeMillis() - t.getTime());
+            lastLagMs.set(lag);
+            maxLagMs.accumulateAndGet(lag, Math::max);
+            totalLagMs.add(lag);
+        }
+        List<String> keys = doc.getList("k", String.class, List.of());
+        appliedKeys.add(keys.size());
+        for (Consumer<Collection<String>> l : listeners.get(region)) {
+            try {
+                l.accept(keys);
+            } catch (Exception e) {
+                System.err.println("[CacheBus] Erro ao aplicar invalidação " + region + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "invalidationBus";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        long received = receivedMessages.sum();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", enabled);
+        m.put("node", nodeId);
+        m.put("publishedMessages", publishedMessages.sum());
+        m.put("publishedKeys", publishedKeys.sum());
+        m.put("coalescedKeys", coalescedKeys.sum());
+        m.put("publishFailures", publishFailures.sum());
+        m.put("receivedMessages", received);
+        m.put("appliedKeys", appliedKeys.sum());
+        m.put("lastLagMs", lastLagMs.get());
+        m.put("maxLagMs", maxLagMs.get());
+        m.put("avgLagMs", received == 0 ? 0 : totalLagMs.sum() / received);
+        m.put("reconnects", reconnects.sum());
+        m.put("resets", resets.sum());
+        m.put("skippedOnOpen", skippedOnOpen.sum());
+        return m;
+    }
+}
@@ -0,0 +1,155 @@
+package ai.startup.usuario.clients;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Circuit breaker com janela deslizante das últimas N chamadas.
+ *
+ * CLOSED: chamadas passam; se a taxa de falha da janela (com pelo menos minimumCalls)
+ * passar do limite, abre. OPEN: rejeita tudo por openMs. HALF_OPEN: deixa passar
+ * halfOpenCalls chamadas de teste; todas ok fecha, qualquer falha reabre.
+ *
+ * Cada transição avança o epoch e tryAcquire devolve o epoch da permissão: o resultado de
+ * uma chamada iniciada num estado anterior (ex: lenta, que termina depois de o circuito
+ * reabrir e ir para HALF_OPEN) é ignorado em vez de contar como chamada de teste.
+ */
+class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final boolean[] window;          // true = falha
+    private final int minimumCalls;
+    private final double failureRateThreshold; // 0..100
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    private State state = State.CLOSED;
+    private int windowPos;
+    private int windowCount;
+    private int windowFailures;
+    private long openedAt;
+    private int halfOpenInFlight;
+    private int halfOpenSuccesses;
+    private long epoch;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder staleResults = new LongAdder();
+    private final Map<String, LongAdder> transitions = new LinkedHashMap<>();
+
+    CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                   long openMs, int halfOpenCalls) {
+        this.name = name;
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openMs * 1_000_000L;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        for (State from : State.values()) {
+            for (State to : State.values()) {
+                if (from != to) transitions.put(from + "->" + to, new LongAdder());
+            }
+        }
+    }
+
+    /**
+     * Epoch da permissão (>= 0) se a chamada pode seguir, ou -1 se foi rejeitada.
+     * Quem recebe uma permissão deve chamar onSuccess/onFailure/release com ela depois.
+     */
+    synchronized long tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                rejected.increment();
+                return -1;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenInFlight + halfOpenSuccesses >= halfOpenCalls) {
+                rejected.increment();
+                return -1;
+            }
+            halfOpenInFlight++;
+        }
+        return epoch;
+    }
+
+    /** devolve a permissão sem registrar resultado (a chamada não foi feita ou não diz nada do destino) */
+    synchronized void release(long permit) {
+        if (stale(permit)) return;
+        if (state == State.HALF_OPEN && halfOpenInFlight > 0) halfOpenInFlight--;
+    }
+
+    synchronized void onSuccess(long permit) {
+        if (stale(permit)) return;
+        if (state == State.HALF_OPEN) {
+            halfOpenInFlight--;
+            if (++halfOpenSuccesses >= halfOpenCalls) transition(State.CLOSED);
+            return;
+        }
+        record(false);
+    }
+
+    synchronized void onFailure(long permit) {
+        if (stale(permit)) return;
+        if (state == State.HALF_OPEN) {
+            transition(State.OPEN);
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && windowCount >= minimumCalls
+                && windowFailures * 100.0 / windowCount >= failureRateThreshold) {
+            transition(State.OPEN);
+        }
+    }
+
+    // chamado com o lock
+    private boolean stale(long permit) {
+        if (permit == epoch) return false;
+        staleResults.increment();
+        return true;
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == window.length) {
+            if (window[windowPos]) windowFailures--;
+        } else {
+            windowCount++;
+        }
+        window[windowPos] = failure;
+        if (failure) windowFailures++;
+        windowPos = (windowPos + 1) % window.length;
+    }
+
+    private void transition(State to) {
+        transitions.get(state + "->" + to).increment();
+        System.out.println("[CircuitBreaker] " + name + ": " + state + " → " + to);
+        state = to;
+        epoch++;
+        halfOpenInFlight = 0;
+        halfOpenSuccesses = 0;
+        if (to == State.OPEN) {
+            openedAt = System.nanoTime();
+        }
+        if (to == State.CLOSED) {
+            windowPos = 0;
+            windowCount = 0;
+            windowFailures = 0;
+        }
+    }
+
+    synchronized Map<String, Object> snapshot() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("state", state.name());
+        m.put("windowCalls", windowCount);
+        m.put("failureRate", windowCount == 0 ? 0.0 : windowFailures * 100.0 / windowCount);
+        m.put("rejected", rejected.sum());
+        m.put("staleResults", staleResults.sum());
+        Map<String, Long> t = new LinkedHashMap<>();
+        transitions.forEach((k, v) -> t.put(k, v.sum()));
+        m.put("transitions", t);
+        return m;
+    }
+}
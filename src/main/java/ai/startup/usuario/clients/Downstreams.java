@@ -0,0 +1,125 @@
+package ai.startup.usuario.clients;
+
+import ai.startup.usuario.metrics.MetricsSource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Proteção das chamadas a serviços externos: bulkhead (limite de chamadas simultâneas por
+ * destino) + circuit breaker. Com o destino doente a chamada falha na hora com 503, em vez de
+ * segurar threads do Tomcat esperando timeout. Configuração em http.client.targets.&lt;name&gt;.*
+ */
+@Component
+public class Downstreams implements MetricsSource {
+
+    private final HttpClientProperties props;
+    private final Map<String, Guard> guards = new ConcurrentHashMap<>();
+
+    private static final class Guard {
+        final CircuitBreaker breaker;
+        final Semaphore bulkhead;
+        final int maxConcurrent;
+        final long maxWaitMs;
+        final LongAdder bulkheadRejected = new LongAdder();
+
+        Guard(CircuitBreaker breaker, int maxConcurrent, long maxWaitMs) {
+            this.breaker = breaker;
+            this.bulkhead = new Semaphore(maxConcurrent);
+            this.maxConcurrent = maxConcurrent;
+            this.maxWaitMs = maxWaitMs;
+        }
+    }
+
+    public Downstreams(HttpClientProperties props) {
+        this.props = props;
+    }
+
+    /**
+     * Executa a chamada ao destino sob bulkhead + circuit breaker.
+     * Lança 503 se o circuito estiver aberto ou o bulkhead cheio; erros da chamada sobem como estão.
+     */
+    public <T> T call(String target, Supplier<T> call) {
+        Guard g = guards.computeIfAbsent(target, this::create);
+
+        long breakerPermit = g.breaker.tryAcquire();
+        if (breakerPermit < 0) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Serviço " + target + " indisponível (circuito aberto)");
+        }
+        boolean permit;
+        try {
+            permit = g.bulkhead.tryAcquire(g.maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            permit = false;
+        }
+        if (!permit) {
+            g.bulkheadRejected.increment();
+            g.breaker.release(breakerPermit); // não chegou a chamar: não conta na janela
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Serviço " + target + " sobrecarregado");
+        }
+
+        try {
+            T result = call.get();
+            g.breaker.onSuccess(breakerPermit);
+            return result;
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode().value() == 429) {
+                g.breaker.onFailure(breakerPermit); // destino sobrecarregado
+            } else {
+                // 4xx: o erro é da requisição, não diz se o destino está saudável; não conta na janela
+                g.breaker.release(breakerPermit);
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            g.breaker.onFailure(breakerPermit);
+            throw e;
+        } finally {
+            g.bulkhead.release();
+        }
+    }
+
+    public void run(String target, Runnable call) {
+        call(target, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private Guard create(String target) {
+        HttpClientProperties.Target t = props.target(target);
+        CircuitBreaker breaker = new CircuitBreaker(target, t.getBreakerWindowSize(), t.getBreakerMinimumCalls(),
+                t.getBreakerFailureRate(), t.getBreakerOpenMs(), t.getBreakerHalfOpenCalls());
+        return new Guard(breaker, t.getMaxConcurrentCalls(), t.getBulkheadWaitMs());
+    }
+
+    @Override
+    public String metricsName() {
+        return "downstreams";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new TreeMap<>();
+        guards.forEach((name, g) -> {
+            Map<String, Object> s = new LinkedHashMap<>(g.breaker.snapshot());
+            s.put("inFlight", g.maxConcurrent - g.bulkhead.availablePermits());
+            s.put("maxConcurrent", g.maxConcurrent);
+            s.put("bulkheadRejected", g.bulkheadRejected.sum());
+            m.put(name, s);
+        });
+        return m;
+    }
+}
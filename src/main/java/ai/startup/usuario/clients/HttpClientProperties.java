@@ -0,0 +1,42 @@
+package ai.startup.usuario.clients;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timeouts, pool, bulkhead e circuit breaker por serviço de destino (prefixo "http.client" no application.properties)
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "http.client")
+public class HttpClientProperties {
+
+    private Map<String, Target> targets = new LinkedHashMap<>();
+
+    @Data
+    public static class Target {
+        private long connectTimeoutMs = 2_000;      // abrir a conexão TCP
+        private long readTimeoutMs = 5_000;         // silêncio máximo entre pacotes da resposta
+        private long totalTimeoutMs = 10_000;       // prazo total da chamada (headers + corpo)
+        private long poolTimeoutMs = 1_000;         // espera por uma conexão livre no pool
+        private int maxConnections = 50;
+        private long connectionTtlSeconds = 300;    // recicla conexões keep-alive antigas
+
+        // bulkhead + circuit breaker (Downstreams)
+        private int maxConcurrentCalls = 20;        // chamadas simultâneas ao destino
+        private long bulkheadWaitMs = 0;            // espera por vaga antes de falhar com 503
+        private int breakerWindowSize = 20;         // últimas N chamadas consideradas
+        private int breakerMinimumCalls = 10;       // mínimo de chamadas na janela para abrir
+        private double breakerFailureRate = 50;     // % de falhas que abre o circuito
+        private long breakerOpenMs = 30_000;        // tempo aberto antes de testar de novo
+        private int breakerHalfOpenCalls = 3;       // chamadas de teste no half-open
+    }
+
+    public Target target(String name) {
+        return targets.getOrDefault(name, new Target());
+    }
+}
@@ -0,0 +1,61 @@
+package ai.startup.usuario.clients;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latência com buckets fixos (ms). Percentis são o limite superior do bucket.
+ */
+class LatencyHistogram {
+
+    private static final long[] BOUNDS_MS = {5, 10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000};
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_MS.length + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMs = new LongAdder();
+
+    LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    void record(long ms) {
+        int i = 0;
+        while (i < BOUNDS_MS.length && ms > BOUNDS_MS[i]) i++;
+        buckets[i].increment();
+        count.increment();
+        totalMs.add(ms);
+    }
+
+    Map<String, Object> snapshot() {
+        long[] counts = new long[buckets.length];
+        long n = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            n += counts[i];
+        }
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("count", n);
+        m.put("avgMs", n == 0 ? 0 : totalMs.sum() / n);
+        m.put("p50Ms", percentile(counts, n, 0.50));
+        m.put("p95Ms", percentile(counts, n, 0.95));
+        m.put("p99Ms", percentile(counts, n, 0.99));
+        Map<String, Long> hist = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            hist.put(i < BOUNDS_MS.length ? "le" + BOUNDS_MS[i] : "inf", counts[i]);
+        }
+        m.put("buckets", hist);
+        return m;
+    }
+
+    private static Object percentile(long[] counts, long n, double p) {
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(p * n);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return i < BOUNDS_MS.length ? BOUNDS_MS[i] : ">" + BOUNDS_MS[BOUNDS_MS.length - 1];
+        }
+        return ">" + BOUNDS_MS[BOUNDS_MS.length - 1];
+    }
+}
@@ -0,0 +1,237 @@
+package ai.startup.usuario.clients;
+
+import ai.startup.usuario.metrics.MetricsSource;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Camada HTTP de saída compartilhada pelos clients (perfil, questão, ...).
+ *
+ * Um RestTemplate por serviço de destino, cada um com seu pool de conexões persistentes
+ * (HTTP/1.1 keep-alive, Apache HttpClient 5), timeouts de conexão/leitura/pool, prazo total
+ * por chamada e gzip (Accept-Encoding + descompressão automática do HttpClient).
+ * Expõe histograma de latência e uso do pool por destino em /admin/metrics.
+ */
+@Component
+public class OutboundHttp implements MetricsSource {
+
+    private final HttpClientProperties props;
+    private final Map<String, TargetClient> targets = new ConcurrentHashMap<>();
+
+    // cancela chamadas que passam do totalTimeoutMs (conexão + headers + corpo)
+    private final ScheduledThreadPoolExecutor deadlines;
+    // timer da chamada em andamento nesta thread (criado no factory, desarmado no close da resposta)
+    private static final ThreadLocal<ScheduledFuture<?>> CURRENT_DEADLINE = new ThreadLocal<>();
+
+    private static final class TargetClient {
+        final RestTemplate restTemplate;
+        final CloseableHttpClient client;
+        final PoolingHttpClientConnectionManager pool;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder deadlineCancels = new LongAdder();
+
+        TargetClient(RestTemplate restTemplate, CloseableHttpClient client, PoolingHttpClientConnectionManager pool) {
+            this.restTemplate = restTemplate;
+            this.client = client;
+            this.pool = pool;
+        }
+    }
+
+    public OutboundHttp(HttpClientProperties props) {
+        this.props = props;
+        this.deadlines = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "http-deadline");
+            t.setDaemon(true);
+            return t;
+        });
+        this.deadlines.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * RestTemplate do destino (criado na primeira chamada com as configs de http.client.targets.&lt;name&gt;)
+     */
+    public RestTemplate restTemplate(String name) {
+        return targets.computeIfAbsent(name, this::create).restTemplate;
+    }
+
+    private TargetClient create(String name) {
+        HttpClientProperties.Target t = props.target(name);
+
+        PoolingHttpClientConnectionManager pool = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(t.getMaxConnections())
+                .setMaxConnPerRoute(t.getMaxConnections())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(t.getConnectTimeoutMs()))
+                        .setSocketTimeout(Timeout.ofMilliseconds(t.getReadTimeoutMs()))
+                        .setTimeToLive(TimeValue.ofSeconds(t.getConnectionTtlSeconds()))
+                        .build())
+                .build();
+
+        CloseableHttpClient client = HttpClients.custom()
+                .setConnectionManager(pool)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(t.getPoolTimeoutMs()))
+                        .setResponseTimeout(Timeout.ofMilliseconds(t.getReadTimeoutMs()))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(30))
+                .build(); // compressão de conteúdo (gzip/deflate) já vem ligada
+
+        long totalMs = t.getTotalTimeoutMs();
+        TargetClient[] holder = new TargetClient[1];
+        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(client) {
+            @Override
+            protected void postProcessHttpRequest(ClassicHttpRequest request) {
+                if (totalMs > 0 && request instanceof HttpUriRequestBase r) {
+                    CURRENT_DEADLINE.set(deadlines.schedule(() -> {
+                        if (r.cancel()) holder[0].deadlineCancels.increment();
+                    }, totalMs, TimeUnit.MILLISECONDS));
+                }
+            }
+        };
+
+        RestTemplate rt = new RestTemplate(factory);
+        TargetClient tc = new TargetClient(rt, client, pool);
+        holder[0] = tc;
+        rt.getInterceptors().add(timing(tc));
+        System.out.println("[HTTP] Cliente '" + name + "': connect=" + t.getConnectTimeoutMs() + "ms read=" + t.getReadTimeoutMs()
+                + "ms total=" + totalMs + "ms pool=" + t.getMaxConnections());
+        return tc;
+    }
+
+    /**
+     * Mede do envio até o fechamento da resposta (corpo já lido) e desarma o prazo total nesse momento
+     */
+    private static ClientHttpRequestInterceptor timing(TargetClient tc) {
+        return (request, body, execution) -> {
+            long start = System.nanoTime();
+            ClientHttpResponse response;
+            try {
+                response = execution.execute(request, body);
+            } catch (IOException | RuntimeException e) {
+                disarm();
+                tc.errors.increment();
+                tc.latency.record((System.nanoTime() - start) / 1_000_000);
+                throw e;
+            }
+            ScheduledFuture<?> deadline = CURRENT_DEADLINE.get();
+            CURRENT_DEADLINE.remove();
+            return new TimedResponse(response, () -> {
+                if (deadline != null) deadline.cancel(false);
+                tc.latency.record((System.nanoTime() - start) / 1_000_000);
+            });
+        };
+    }
+
+    private static void disarm() {
+        ScheduledFuture<?> deadline = CURRENT_DEADLINE.get();
+        CURRENT_DEADLINE.remove();
+        if (deadline != null) deadline.cancel(false);
+    }
+
+    /** Resposta que executa onClose uma única vez quando o RestTemplate termina de lê-la */
+    private static final class TimedResponse implements ClientHttpResponse {
+        private final ClientHttpResponse delegate;
+        private Runnable onClose;
+
+        TimedResponse(ClientHttpResponse delegate, Runnable onClose) {
+            this.delegate = delegate;
+            this.onClose = onClose;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                if (onClose != null) {
+                    onClose.run();
+                    onClose = null;
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        deadlines.shutdownNow();
+        targets.values().forEach(tc -> {
+            try {
+                tc.client.close();
+            } catch (IOException ignored) {
+            }
+        });
+    }
+
+    @Override
+    public String metricsName() {
+        return "outboundHttp";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new TreeMap<>();
+        targets.forEach((name, tc) -> {
+            PoolStats ps = tc.pool.getTotalStats();
+            Map<String, Object> t = new LinkedHashMap<>();
+            t.put("latency", tc.latency.snapshot());
+            t.put("errors", tc.errors.sum());
+            t.put("deadlineCancels", tc.deadlineCancels.sum());
+            t.put("poolLeased", ps.getLeased());
+            t.put("poolAvailable", ps.getAvailable());
+            t.put("poolPending", ps.getPending());
+            t.put("poolMax", ps.getMax());
+            m.put(name, t);
+        });
+        return m;
+    }
+}
@@ -9,11 +9,14 @@ import java.util.Map;
 
 @Component
 public class PerfilClient {
-    private final RestTemplate rt = new RestTemplate();
+    private final RestTemplate rt;
     private final String base;
+    private final Downstreams downstreams;
 
-    public PerfilClient(@Value("${api.perfil.base}") String base) {
+    public PerfilClient(@Value("${api.perfil.base}") String base, OutboundHttp http, Downstreams downstreams) {
         this.base = base;
+        this.downstreams = downstreams;
+        this.rt = http.restTemplate("perfil"); // pool + timeouts (http.client.targets.perfil.*)
     }
 
     public void criarPerfil(String bearerToken, Map<String,Object> body) {
@@ -21,7 +24,8 @@ public class PerfilClient {
         var headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
         headers.set("Authorization", bearerToken);
-        ResponseEntity<Void> resp = rt.exchange(url, HttpMethod.POST, new HttpEntity<>(body, headers), Void.class);
+        ResponseEntity<Void> resp = downstreams.call("perfil",
+                () -> rt.exchange(url, HttpMethod.POST, new HttpEntity<>(body, headers), Void.class));
         if (!resp.getStatusCode().is2xxSuccessful()) {
             throw new RuntimeException("Falha ao criar perfil: " + resp.getStatusCode());
         }
@@ -1,71 +1,109 @@
 package ai.startup.usuario.clients;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import org.springframework.http.*;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
 @Component
 public class QuestaoClient {
-    private final RestTemplate rt = new RestTemplate();
+    private final RestTemplate rt;
     private final String base;
+    private final Downstreams downstreams;
 
-    public QuestaoClient(@Value("${api.questao.base}") String base) {
+    private static final JsonFactory JSON = new JsonFactory();
+
+    public QuestaoClient(@Value("${api.questao.base}") String base, OutboundHttp http, Downstreams downstreams) {
         this.base = base;
+        this.downstreams = downstreams;
+        this.rt = http.restTemplate("questao"); // pool + timeouts (http.client.targets.questao.*)
     }
 
     /**
-     * Busca todas as questões de um usuário
+     * Busca todas as questões de um usuário.
+     * Falhas sobem para o chamador (503 se o circuito estiver aberto): devolver lista vazia
+     * aqui faria o recálculo gravar XP zerado.
      */
     public List<Map<String, Object>> getQuestoesByUsuario(String bearerToken, String userId) {
         var url = base + "/questoes/by-usuario/" + userId;
         var headers = new HttpHeaders();
         headers.set("Authorization", bearerToken);
-        
-        try {
-            ResponseEntity<List> resp = rt.exchange(
-                url, 
-                HttpMethod.GET, 
-                new HttpEntity<>(headers), 
-                List.class
-            );
-            
-            if (resp.getStatusCode().is2xxSuccessful() && resp.getBody() != null) {
-                return (List<Map<String, Object>>) resp.getBody();
-            }
-            return List.of();
-        } catch (Exception e) {
-            System.err.println("[QuestaoClient] Erro ao buscar questões do usuário " + userId + ": " + e.getMessage());
-            return List.of();
+
+        ResponseEntity<List> resp = downstreams.call("questao", () -> rt.exchange(
+            url,
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            List.class
+        ));
+
+        if (resp.getStatusCode().is2xxSuccessful() && resp.getBody() != null) {
+            return (List<Map<String, Object>>) resp.getBody();
         }
+        return List.of();
     }
 
     /**
      * Conta questões corretas de um usuário
      * Uma questão é considerada correta se alternativa_marcada == correct_option
+     *
+     * Lê a resposta em streaming (token a token) em vez de montar a lista inteira:
+     * memória constante, independente do tamanho do histórico.
      */
     public long countCorrectAnswers(String bearerToken, String userId) {
-        List<Map<String, Object>> questoes = getQuestoesByUsuario(bearerToken, userId);
-        
-        return questoes.stream()
-            .filter(q -> {
-                Object marcada = q.get("alternativa_marcada");
-                Object correta = q.get("correct_option");
-                
-                if (marcada == null || correta == null) {
-                    return false;
+        var url = base + "/questoes/by-usuario/" + userId;
+
+        Long count = downstreams.call("questao", () -> rt.execute(url, HttpMethod.GET,
+            req -> req.getHeaders().set("Authorization", bearerToken),
+            resp -> {
+                try (InputStream body = resp.getBody()) {
+                    return countCorrect(body);
+                }
+            }));
+        return count != null ? count : 0L;
+    }
+
+    /**
+     * Percorre um array JSON de questões olhando só alternativa_marcada e correct_option
+     * de cada elemento (campos aninhados são pulados). Corpo vazio ou que não seja array conta 0.
+     */
+    static long countCorrect(InputStream body) throws IOException {
+        try (JsonParser p = JSON.createParser(body)) {
+            if (p.nextToken() != JsonToken.START_ARRAY) return 0L;
+
+            long count = 0;
+            JsonToken t;
+            while ((t = p.nextToken()) != null && t != JsonToken.END_ARRAY) {
+                if (t != JsonToken.START_OBJECT) {
+                    p.skipChildren(); // elemento que não é objeto: ignora
+                    continue;
+                }
+                String marcada = null;
+                String correta = null;
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.currentName();
+                    JsonToken v = p.nextToken();
+                    if (v.isScalarValue() && v != JsonToken.VALUE_NULL) {
+                        if ("alternativa_marcada".equals(field)) marcada = p.getText();
+                        else if ("correct_option".equals(field)) correta = p.getText();
+                    } else {
+                        p.skipChildren();
+                    }
                 }
-                
                 // Compara como strings (case-insensitive)
-                String marcadaStr = String.valueOf(marcada).trim().toUpperCase();
-                String corretaStr = String.valueOf(correta).trim().toUpperCase();
-                
-                return marcadaStr.equals(corretaStr);
-            })
-            .count();
+                if (marcada != null && correta != null
+                        && marcada.trim().equalsIgnoreCase(correta.trim())) {
+                    count++;
+                }
+            }
+            return count;
+        }
     }
 }
-
@@ -0,0 +1,33 @@
+package ai.startup.usuario.metrics;
+
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@RestController
+public class MetricsController {
+
+    private final List<MetricsSource> sources;
+
+    public MetricsController(List<MetricsSource> sources) {
+        this.sources = sources;
+    }
+
+    /**
+     * GET /admin/metrics - Contadores internos (caches, pools, etc.) - requer ADMIN
+     */
+    @SecurityRequirement(name = "bearerAuth")
+    @GetMapping("/admin/metrics")
+    public ResponseEntity<Map<String, Object>> metrics() {
+        Map<String, Object> body = new TreeMap<>();
+        for (MetricsSource s : sources) {
+            body.put(s.metricsName(), s.stats());
+        }
+        return ResponseEntity.ok(body);
+    }
+}
@@ -0,0 +1,11 @@
+package ai.startup.usuario.metrics;
+
+import java.util.Map;
+
+/**
+ * Componente que expõe contadores internos em GET /admin/metrics
+ */
+public interface MetricsSource {
+    String metricsName();
+    Map<String, Object> stats();
+}
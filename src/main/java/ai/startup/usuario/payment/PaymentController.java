@@ -1,11 +1,10 @@
 package ai.startup.usuario.payment;
 
+import ai.startup.usuario.auth.CurrentUser;
+import ai.startup.usuario.auth.EntitlementCache;
 import com.stripe.exception.StripeException;
 import com.stripe.exception.SignatureVerificationException;
 import com.stripe.model.Event;
-import com.stripe.model.EventDataObjectDeserializer;
-import com.stripe.model.StripeObject;
-import com.stripe.model.checkout.Session;
 import com.stripe.net.Webhook;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -15,6 +14,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
 @RestController
@@ -22,12 +23,19 @@ import java.util.List;
 public class PaymentController {
 
     private final PaymentService paymentService;
+    private final StripeWebhookInbox webhookInbox;
+    private final CurrentUser currentUser;
+    private final EntitlementCache entitlements;
 
     @Value("${stripe.webhook.secret}")
     private String webhookSecret;
 
-    public PaymentController(PaymentService paymentService) {
+    public PaymentController(PaymentService paymentService, StripeWebhookInbox webhookInbox, CurrentUser currentUser,
+                             EntitlementCache entitlements) {
         this.paymentService = paymentService;
+        this.webhookInbox = webhookInbox;
+        this.currentUser = currentUser;
+        this.entitlements = entitlements;
     }
 
     /**
@@ -46,9 +54,14 @@ public class PaymentController {
             if (userEmail == null || userEmail.isBlank()) {
                 return ResponseEntity.status(401).build();
             }
+            // já premium (estado atual, não o do token): não abre uma segunda assinatura
+            if (paymentService.isSubscriptionProduct(request.productId()) && entitlements.resolve(httpRequest).premium()) {
+                return ResponseEntity.status(409).build();
+            }
 
             CheckoutResponseDTO response = paymentService.createCheckoutSession(
                 request.productId(),
+                currentUser.id(),   // do token; sem findByEmail
                 userEmail,
                 request.successUrl(),
                 request.cancelUrl()
@@ -80,21 +93,67 @@ public class PaymentController {
     }
 
     /**
-     * GET /payments/history/{userId}
-     * Lista todas as compras de um usuário
+     * GET /payments/history/{userId}?limit=&before=
+     * Lista as compras de um usuário, paginado (mais recentes primeiro). Só o próprio usuário ou ADMIN.
+     * O header X-Next-Cursor traz o valor de before para a próxima página ("processedAt|sessionId").
      */
     @SecurityRequirement(name = "bearerAuth")
     @GetMapping("/history/{userId}")
-    public ResponseEntity<List<PaymentHistoryDTO>> getUserPaymentHistory(@PathVariable String userId) {
+    public ResponseEntity<List<PaymentHistoryDTO>> getUserPaymentHistory(
+        @PathVariable String userId,
+        @RequestParam(defaultValue = "20") int limit,
+        @RequestParam(required = false) String before,
+        HttpServletRequest req
+    ) {
+        if (!canRead(userId, req)) {
+            return ResponseEntity.status(403).build();
+        }
+        LocalDateTime beforeAt = null;
+        String beforeId = null;
+        if (before != null && !before.isBlank()) {
+            int sep = before.indexOf('|');
+            try {
+                beforeAt = LocalDateTime.parse(sep < 0 ? before : before.substring(0, sep));
+            } catch (DateTimeParseException e) {
+                return ResponseEntity.badRequest().build();
+            }
+            beforeId = sep < 0 ? null : before.substring(sep + 1);
+        }
         try {
-            List<PaymentHistoryDTO> history = paymentService.getUserPaymentHistory(userId);
-            return ResponseEntity.ok(history);
+            List<PaymentHistoryDTO> history = paymentService.getUserPaymentHistory(userId, limit, beforeAt, beforeId);
+            ResponseEntity.BodyBuilder ok = ResponseEntity.ok();
+            if (!history.isEmpty() && history.size() >= Math.min(limit, PaymentService.MAX_HISTORY_PAGE)) {
+                PaymentHistoryDTO last = history.get(history.size() - 1);
+                ok.header("X-Next-Cursor", last.processedAt() + "|" + last.sessionId());
+            }
+            return ok.body(history);
         } catch (Exception e) {
             System.err.println("[Payment] Erro ao buscar histórico: " + e.getMessage());
             return ResponseEntity.status(500).build();
         }
     }
 
+    /**
+     * GET /payments/history/{userId}/summary
+     * Totais de compras por produto. Só o próprio usuário ou ADMIN.
+     */
+    @SecurityRequirement(name = "bearerAuth")
+    @GetMapping("/history/{userId}/summary")
+    public ResponseEntity<List<PaymentSummaryDTO>> getUserPaymentSummary(
+        @PathVariable String userId,
+        HttpServletRequest req
+    ) {
+        if (!canRead(userId, req)) {
+            return ResponseEntity.status(403).build();
+        }
+        try {
+            return ResponseEntity.ok(paymentService.getUserPaymentSummary(userId));
+        } catch (Exception e) {
+            System.err.println("[Payment] Erro ao buscar resumo de compras: " + e.getMessage());
+            return ResponseEntity.status(500).build();
+        }
+    }
+
     /**
      * POST /payments/webhook
      * Webhook do Stripe para eventos de pagamento
@@ -118,53 +177,19 @@ public class PaymentController {
             return ResponseEntity.status(400).body("Invalid signature");
         }
 
-        // Processar eventos do Stripe
-        System.out.println("[Payment Webhook] Evento recebido: " + event.getType());
-
+        // Só grava no inbox e responde: o processamento é feito pelos workers (StripeWebhookInbox)
         try {
-            switch (event.getType()) {
-                case "checkout.session.completed":
-                    // Pagamento único ou assinatura iniciada
-                    Session session = (Session) deserializeEvent(event);
-                    String sessionId = session.getId();
-                    System.out.println("[Payment Webhook] Checkout completo: " + sessionId);
-                    paymentService.handleSuccessfulPayment(sessionId);
-                    break;
-
-                case "invoice.payment_succeeded":
-                    // Renovação de assinatura bem-sucedida
-                    System.out.println("[Payment Webhook] Renovação de assinatura bem-sucedida");
-                    // TODO: Implementar lógica de renovação se necessário
-                    break;
-
-                case "customer.subscription.deleted":
-                    // Assinatura cancelada
-                    System.out.println("[Payment Webhook] Assinatura cancelada");
-                    // TODO: Implementar lógica de cancelamento
-                    break;
-
-                default:
-                    System.out.println("[Payment Webhook] Evento não tratado: " + event.getType());
-            }
-
-            return ResponseEntity.ok("Webhook processado");
+            boolean fresh = webhookInbox.enqueue(event, payload);
+            System.out.println("[Payment Webhook] Evento " + (fresh ? "recebido" : "repetido") + ": " + event.getId() + " (" + event.getType() + ")");
+            return ResponseEntity.ok("Webhook recebido");
         } catch (Exception e) {
-            System.err.println("[Payment Webhook] Erro ao processar evento: " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("[Payment Webhook] Erro ao gravar evento: " + e.getMessage());
             return ResponseEntity.status(500).body("Erro ao processar webhook");
         }
     }
 
-    /**
-     * Helper para deserializar eventos do Stripe
-     */
-    private StripeObject deserializeEvent(Event event) {
-        EventDataObjectDeserializer dataObjectDeserializer = event.getDataObjectDeserializer();
-        if (dataObjectDeserializer.getObject().isPresent()) {
-            return dataObjectDeserializer.getObject().get();
-        }
-        throw new IllegalArgumentException("Não foi possível deserializar o evento");
+    /** Histórico de compras: só do próprio usuário, ou qualquer um para ADMIN */
+    private boolean canRead(String userId, HttpServletRequest req) {
+        return userId.equals(currentUser.id()) || "ADMIN".equalsIgnoreCase((String) req.getAttribute("authPermissao"));
     }
 }
-
-
@@ -1,14 +1,27 @@
 package ai.startup.usuario.payment;
 
 import ai.startup.usuario.usuario.Usuario;
-import ai.startup.usuario.usuario.UsuarioRepository;
+import ai.startup.usuario.wins.WinsService;
+import ai.startup.usuario.wins.WinsSource;
 import com.stripe.exception.StripeException;
 import com.stripe.model.checkout.Session;
 import com.stripe.param.checkout.SessionCreateParams;
 import org.springframework.beans.factory.annotation.Value;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.util.HashMap;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -16,38 +29,47 @@ import java.util.stream.Collectors;
 @Service
 public class PaymentService {
 
-    private final UsuarioRepository usuarioRepository;
     private final ProcessedPaymentRepository processedPaymentRepository;
+    private final WinsService winsService;
+    private final MongoTemplate mongoTemplate;
 
     @Value("${stripe.webhook.secret}")
     private String webhookSecret;
 
-    // Produtos disponíveis
-    private static final Map<String, ProductInfo> PRODUCTS = new HashMap<>();
-
-    static {
+    // Produtos disponíveis (catálogo imutável, montado uma vez)
+    private static final Map<String, ProductInfo> PRODUCTS = Map.of(
         // Pacote de Wins - R$ 19,90
-        PRODUCTS.put("wins-pack", new ProductInfo(
+        "wins-pack", new ProductInfo(
             "Pacote de Wins",
             1990L, // 19.90 em centavos
             "brl",
             50,  // wins
             false // não é assinatura
-        ));
-
+        ),
         // BrainWin Learn - R$ 99,99/mês
-        PRODUCTS.put("brainwin-learn", new ProductInfo(
+        "brainwin-learn", new ProductInfo(
             "BrainWin Learn - Assinatura Mensal",
             9999L, // 99.99 em centavos
             "brl",
             0,  // não dá wins
             true // é assinatura
-        ));
-    }
+        )
+    );
+
+    static final int MAX_HISTORY_PAGE = 100;
 
-    public PaymentService(UsuarioRepository usuarioRepository, ProcessedPaymentRepository processedPaymentRepository) {
-        this.usuarioRepository = usuarioRepository;
+    public PaymentService(ProcessedPaymentRepository processedPaymentRepository,
+                          WinsService winsService,
+                          MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
         this.processedPaymentRepository = processedPaymentRepository;
+        this.winsService = winsService;
+    }
+
+    /** true se o produto é a assinatura (concede premium) */
+    public boolean isSubscriptionProduct(String productId) {
+        ProductInfo product = PRODUCTS.get(productId);
+        return product != null && product.isSubscription;
     }
 
     /**
@@ -55,6 +77,7 @@ public class PaymentService {
      */
     public CheckoutResponseDTO createCheckoutSession(
         String productId,
+        String userId,
         String userEmail,
         String successUrl,
         String cancelUrl
@@ -65,10 +88,6 @@ public class PaymentService {
             throw new IllegalArgumentException("Produto não encontrado: " + productId);
         }
 
-        // Buscar usuário para obter o ID
-        Usuario user = usuarioRepository.findByEmail(userEmail)
-            .orElseThrow(() -> new IllegalArgumentException("Usuário não encontrado"));
-
         // Validar email antes de enviar para o Stripe
         if (!isValidEmail(userEmail)) {
             System.out.println("[Payment] ❌ Email inválido detectado: " + userEmail);
@@ -85,10 +104,17 @@ public class PaymentService {
             .setSuccessUrl(successUrl + "?session_id={CHECKOUT_SESSION_ID}")
             .setCancelUrl(cancelUrl)
             .setCustomerEmail(userEmail)
-            .putMetadata("userId", user.getId())
+            .putMetadata("userId", userId)
             .putMetadata("productId", productId);
 
         if (product.isSubscription) {
+            // metadata na assinatura: renovações e cancelamentos chegam sem a sessão
+            builder.setSubscriptionData(
+                SessionCreateParams.SubscriptionData.builder()
+                    .putMetadata("userId", userId)
+                    .putMetadata("productId", productId)
+                    .build()
+            );
             // Modo assinatura
             builder.addLineItem(
                 SessionCreateParams.LineItem.builder()
@@ -139,89 +165,124 @@ public class PaymentService {
     }
 
     /**
-     * Processa pagamento bem-sucedido
+     * Processa pagamento bem-sucedido.
+     *
+     * Idempotência garantida pelo banco: o _id de processed_payments é o sessionId, então só a
+     * entrega que consegue inserir o claim credita. São duas escritas por pagamento (claim +
+     * $inc atômico no usuário), mais a entrada do ledger.
      */
     public void handleSuccessfulPayment(String sessionId) throws StripeException {
-        System.out.println("[Payment] ========================================");
         System.out.println("[Payment] Processando pagamento para sessão: " + sessionId);
-        
-        // Verificar se já foi processado no banco (evitar duplicação)
-        if (processedPaymentRepository.existsBySessionId(sessionId)) {
-            System.out.println("[Payment] ⚠️⚠️⚠️ DUPLICAÇÃO DETECTADA! ⚠️⚠️⚠️");
-            System.out.println("[Payment] Sessão " + sessionId + " já foi processada anteriormente!");
-            System.out.println("[Payment] IGNORANDO para evitar adicionar wins duplicados.");
-            System.out.println("[Payment] ========================================");
-            return;
-        }
-        
         Session session = Session.retrieve(sessionId);
-        System.out.println("[Payment] Sessão recuperada do Stripe: " + session.getId());
-        System.out.println("[Payment] Status da sessão: " + session.getPaymentStatus());
-        
-        String userId = session.getMetadata().get("userId");
-        String productId = session.getMetadata().get("productId");
-        
-        System.out.println("[Payment] Metadata - userId: " + userId + ", productId: " + productId);
+        System.out.println("[Payment] Sessão recuperada do Stripe: " + session.getId() + " (status: " + session.getPaymentStatus() + ")");
+        applyCheckoutSession(session);
+    }
+
+    /**
+     * Aplica uma sessão de checkout concluída (já obtida do Stripe ou do evento verificado do webhook)
+     */
+    public void applyCheckoutSession(Session session) {
+        String sessionId = session.getId();
+        Map<String, String> metadata = session.getMetadata() != null ? session.getMetadata() : Map.of();
+        String userId = metadata.get("userId");
+        String productId = metadata.get("productId");
         
         if (userId == null || productId == null) {
             System.err.println("[Payment] ERRO: Metadata inválida na sessão");
             throw new IllegalArgumentException("Metadata inválida na sessão");
         }
 
-        Usuario user = usuarioRepository.findById(userId)
-            .orElseThrow(() -> {
-                System.err.println("[Payment] ERRO: Usuário não encontrado: " + userId);
-                return new IllegalArgumentException("Usuário não encontrado: " + userId);
-            });
-
-        System.out.println("[Payment] Usuário encontrado: " + user.getEmail() + " (wins atuais: " + user.getWins() + ")");
-
         ProductInfo product = PRODUCTS.get(productId);
         if (product == null) {
             System.err.println("[Payment] ERRO: Produto não encontrado: " + productId);
             throw new IllegalArgumentException("Produto não encontrado: " + productId);
         }
 
-        System.out.println("[Payment] Produto: " + product.name + " (wins: " + product.wins + ", subscription: " + product.isSubscription + ")");
+        // 1ª escrita: reivindica a sessão. Chave duplicada = outra entrega já creditou (ou falhou)
+        try {
+            processedPaymentRepository.insert(new ProcessedPayment(sessionId, userId, productId));
+        } catch (DuplicateKeyException e) {
+            System.out.println("[Payment] ⚠️ Sessão " + sessionId + " já processada, ignorando");
+            return;
+        }
 
-        if (product.isSubscription) {
-            // Ativar assinatura BrainWin Learn
-            user.setIsPremium(true);
-            System.out.println("[Payment] ✅ Assinatura ativada para usuário: " + user.getEmail());
-        } else {
-            // Adicionar wins
-            long currentWins = user.getWins() != null ? user.getWins() : 0L;
-            long newWins = currentWins + product.wins;
-            user.setWins(newWins);
-            System.out.println("[Payment] ✅ Wins atualizados: " + currentWins + " → " + newWins + " (+" + product.wins + ")");
+        // 2ª escrita: update atômico no usuário. Se falhar o claim vira FAILED (no máximo uma vez:
+        // reentregas não recreditam; o ledger mostra se o $inc chegou a ser aplicado)
+        try {
+            if (product.isSubscription) {
+                Usuario user = winsService.setPremium(userId, true, epochSeconds(session.getCreated()), session.getSubscription());
+                System.out.println("[Payment] ✅ Assinatura ativada para usuário: " + user.getEmail()
+                        + " (premium: " + user.getIsPremium() + ")");
+            } else {
+                Usuario user = winsService.credit(userId, product.wins, WinsSource.STRIPE, sessionId);
+                System.out.println("[Payment] ✅ " + user.getEmail() + ": +" + product.wins + " wins (saldo: " + user.getWins() + ")");
+            }
+        } catch (RuntimeException e) {
+            System.err.println("[Payment] ERRO ao aplicar pagamento " + sessionId + ": " + e.getMessage());
+            markFailed(sessionId, e);
+            if (e instanceof ResponseStatusException rse && rse.getStatusCode() == HttpStatus.NOT_FOUND) {
+                throw new IllegalArgumentException("Usuário não encontrado: " + userId);
+            }
+            throw e;
         }
+    }
 
-        usuarioRepository.save(user);
-        System.out.println("[Payment] ✅ Usuário salvo no banco de dados com sucesso!");
-        
-        // Marcar sessão como processada NO BANCO (persistente)
-        ProcessedPayment processedPayment = new ProcessedPayment(sessionId, userId, productId);
-        processedPaymentRepository.save(processedPayment);
-        System.out.println("[Payment] 🔒 Sessão salva no banco como processada (proteção permanente contra duplicação)");
-        
-        // Verificar se foi salvo corretamente
-        Usuario userVerify = usuarioRepository.findById(userId).orElse(null);
-        if (userVerify != null) {
-            System.out.println("[Payment] ✅ VERIFICAÇÃO FINAL: Usuário " + userVerify.getEmail() + " agora tem " + userVerify.getWins() + " wins");
+    /** Só no caminho de erro: registra a falha no próprio claim (nunca apaga: o $inc pode ter sido aplicado) */
+    private void markFailed(String sessionId, RuntimeException cause) {
+        try {
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(sessionId)),
+                    new Update().set("status", ProcessedPayment.Status.FAILED).set("error", String.valueOf(cause.getMessage())),
+                    ProcessedPayment.class);
+        } catch (RuntimeException e) {
+            System.err.println("[Payment] ERRO ao marcar sessão " + sessionId + " como FAILED: " + e.getMessage());
         }
-        
-        long totalProcessed = processedPaymentRepository.count();
-        System.out.println("[Payment] 📊 Total de pagamentos processados no sistema: " + totalProcessed);
-        System.out.println("[Payment] ========================================");
+    }
+
+    /** created do Stripe (epoch s); ausente = agora */
+    static long epochSeconds(Long created) {
+        return created != null ? created : System.currentTimeMillis() / 1000;
     }
 
     /**
-     * Busca histórico de compras de um usuário
+     * Assinatura renovada/paga (invoice.payment_succeeded): mantém premium ativo.
+     * Ignorada se um evento de assinatura mais novo (ex: cancelamento) já foi aplicado.
      */
-    public List<PaymentHistoryDTO> getUserPaymentHistory(String userId) {
-        List<ProcessedPayment> payments = processedPaymentRepository.findByUserIdOrderByProcessedAtDesc(userId);
-        
-        return payments.stream()
+    public void renewSubscription(String userId, long eventCreated) {
+        Usuario user = winsService.setPremium(userId, true, eventCreated, null);
+        System.out.println("[Payment] ✅ Renovação aplicada para usuário: " + user.getEmail()
+                + " (premium: " + user.getIsPremium() + ")");
+    }
+
+    /**
+     * Assinatura cancelada (customer.subscription.deleted): remove premium, se for a assinatura atual
+     */
+    public void cancelSubscription(String userId, long eventCreated, String subscriptionId) {
+        Usuario user = winsService.setPremium(userId, false, eventCreated, subscriptionId);
+        System.out.println("[Payment] Cancelamento aplicado para usuário: " + user.getEmail()
+                + " (premium: " + user.getIsPremium() + ")");
+    }
+
+    /**
+     * Busca uma página do histórico de compras de um usuário (mais recentes primeiro).
+     * (before, beforeId) = processedAt e sessionId do último item da página anterior (null = primeira
+     * página); o sessionId desempata compras no mesmo instante. Usa o índice {userId, processedAt, _id}
+     * e só traz os campos exibidos.
+     */
+    public List<PaymentHistoryDTO> getUserPaymentHistory(String userId, int limit, LocalDateTime before, String beforeId) {
+        Criteria criteria = Criteria.where("userId").is(userId).and("status").ne(ProcessedPayment.Status.FAILED);
+        if (before != null && beforeId != null) {
+            criteria = criteria.orOperator(
+                Criteria.where("processedAt").lt(before),
+                Criteria.where("processedAt").is(before).and("_id").lt(beforeId));
+        } else if (before != null) {
+            criteria = criteria.and("processedAt").lt(before);
+        }
+        Query query = new Query(criteria)
+            .with(Sort.by(Sort.Direction.DESC, "processedAt", "_id"))
+            .limit(Math.max(1, Math.min(limit, MAX_HISTORY_PAGE)));
+        query.fields().include("productId").include("processedAt");
+
+        return mongoTemplate.find(query, ProcessedPayment.class).stream()
             .map(payment -> {
                 ProductInfo product = PRODUCTS.get(payment.getProductId());
                 if (product == null) {
@@ -252,6 +313,42 @@ public class PaymentService {
             .collect(Collectors.toList());
     }
 
+    /**
+     * Totais de compras por produto (agregação no Mongo, sem trazer o histórico)
+     */
+    public List<PaymentSummaryDTO> getUserPaymentSummary(String userId) {
+        Aggregation agg = Aggregation.newAggregation(
+            Aggregation.match(Criteria.where("userId").is(userId).and("status").ne(ProcessedPayment.Status.FAILED)),
+            Aggregation.group("productId")
+                .count().as("count")
+                .min("processedAt").as("firstPurchase")
+                .max("processedAt").as("lastPurchase"),
+            Aggregation.sort(Sort.Direction.DESC, "count")
+        );
+
+        return mongoTemplate.aggregate(agg, ProcessedPayment.class, Document.class).getMappedResults().stream()
+            .map(d -> {
+                String productId = d.getString("_id");
+                long count = ((Number) d.get("count")).longValue();
+                ProductInfo product = PRODUCTS.get(productId);
+                return new PaymentSummaryDTO(
+                    productId,
+                    product != null ? product.name : "Produto não encontrado",
+                    count,
+                    product != null ? product.priceInCents * count : null,
+                    product != null ? product.currency : null,
+                    product != null ? (long) product.wins * count : null,
+                    toLocal(d.getDate("firstPurchase")),
+                    toLocal(d.getDate("lastPurchase"))
+                );
+            })
+            .collect(Collectors.toList());
+    }
+
+    private static LocalDateTime toLocal(Date date) {
+        return date == null ? null : LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
+    }
+
     /**
      * Valida formato de email
      */
@@ -265,12 +362,12 @@ public class PaymentService {
     }
 
     // Classe interna para info de produtos
-    private static class ProductInfo {
-        String name;
-        Long priceInCents;
-        String currency;
-        int wins;
-        boolean isSubscription;
+    private static final class ProductInfo {
+        final String name;
+        final Long priceInCents;
+        final String currency;
+        final int wins;
+        final boolean isSubscription;
 
         ProductInfo(String name, Long priceInCents, String currency, int wins, boolean isSubscription) {
             this.name = name;
@@ -0,0 +1,17 @@
+package ai.startup.usuario.payment;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO com os totais de compras de um usuário por produto
+ */
+public record PaymentSummaryDTO(
+    String productId,
+    String productName,
+    long count,
+    Long totalCents,
+    String currency,
+    Long totalWins,
+    LocalDateTime firstPurchase,
+    LocalDateTime lastPurchase
+) {}
@@ -1,21 +1,31 @@
 package ai.startup.usuario.payment;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 
 /**
- * Registro de pagamentos processados para evitar duplicação
+ * Registro de pagamentos processados para evitar duplicação: o insert (claim) é a única
+ * guarda de idempotência do crédito.
+ * CLAIMED = sessão reivindicada e crédito aplicado; FAILED = o crédito falhou depois do claim
+ * (error guarda o motivo; conferir no ledger pela reference = sessionId antes de recreditar).
+ * Registros antigos sem status contam como CLAIMED.
  */
 @Document(collection = "processed_payments")
+@CompoundIndex(name = "user_processed_id", def = "{'userId': 1, 'processedAt': -1, '_id': -1}")
 public class ProcessedPayment {
+
+    public enum Status { CLAIMED, FAILED }
     
     @Id
     private String sessionId;
     private String userId;
     private String productId;
     private LocalDateTime processedAt;
+    private Status status;
+    private String error;
     
     public ProcessedPayment() {}
     
@@ -24,6 +34,7 @@ public class ProcessedPayment {
         this.userId = userId;
         this.productId = productId;
         this.processedAt = LocalDateTime.now();
+        this.status = Status.CLAIMED;
     }
     
     // Getters e Setters
@@ -58,6 +69,22 @@ public class ProcessedPayment {
     public void setProcessedAt(LocalDateTime processedAt) {
         this.processedAt = processedAt;
     }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
 }
 
 
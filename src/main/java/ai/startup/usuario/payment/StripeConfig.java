@@ -11,9 +11,17 @@ public class StripeConfig {
     @Value("${stripe.secret.key}")
     private String stripeSecretKey;
 
+    // vazio = API real; ex: http://localhost:8080/stripe-stub com o profile stripe-stub
+    @Value("${stripe.api.base:}")
+    private String stripeApiBase;
+
     @PostConstruct
     public void init() {
         Stripe.apiKey = stripeSecretKey;
+        if (!stripeApiBase.isBlank()) {
+            Stripe.overrideApiBase(stripeApiBase);
+            System.out.println("[Stripe] Usando API em " + stripeApiBase);
+        }
         System.out.println("[Stripe] Inicializado com sucesso");
     }
 }
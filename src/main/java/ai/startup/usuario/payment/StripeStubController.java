@@ -0,0 +1,224 @@
+package ai.startup.usuario.payment;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stripe.Stripe;
+import io.swagger.v3.oas.annotations.Operation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stand-in local do Stripe para testes de carga e desenvolvimento (profile "stripe-stub").
+ *
+ * Com stripe.api.base=http://localhost:8080/stripe-stub o SDK passa a criar/buscar sessões
+ * de checkout aqui. Os endpoints /stripe-stub/test/** simulam o cliente pagando ou cancelando
+ * e disparam para /payments/webhook eventos assinados com stripe.webhook.secret,
+ * opcionalmente repetidos para exercitar a deduplicação.
+ */
+@Profile("stripe-stub")
+@RestController
+@RequestMapping("/stripe-stub")
+public class StripeStubController {
+
+    private final RestTemplate rt = new RestTemplate();
+    private final ObjectMapper mapper;
+    private final String webhookSecret;
+    private final String webhookUrl;
+
+    private final Map<String, Map<String, Object>> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Object>> subscriptions = new ConcurrentHashMap<>();
+
+    public StripeStubController(ObjectMapper mapper,
+                                @Value("${stripe.webhook.secret}") String webhookSecret,
+                                @Value("${stripe.stub.webhook-url:http://localhost:${server.port:8080}/payments/webhook}") String webhookUrl) {
+        this.mapper = mapper;
+        this.webhookSecret = webhookSecret;
+        this.webhookUrl = webhookUrl;
+        System.out.println("[Stripe Stub] ATIVO - pagamentos NÃO vão para o Stripe real. Webhooks → " + webhookUrl);
+    }
+
+    /**
+     * POST /stripe-stub/v1/checkout/sessions - mesmo contrato (form-encoded) da API do Stripe
+     */
+    @Operation(security = {})
+    @PostMapping(value = "/v1/checkout/sessions", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public Map<String, Object> createSession(@RequestParam MultiValueMap<String, String> form) {
+        String id = "cs_test_" + UUID.randomUUID().toString().replace("-", "");
+        Map<String, Object> session = new LinkedHashMap<>();
+        session.put("id", id);
+        session.put("object", "checkout.session");
+        session.put("mode", form.getFirst("mode"));
+        session.put("status", "open");
+        session.put("payment_status", "unpaid");
+        session.put("customer_email", form.getFirst("customer_email"));
+        session.put("success_url", form.getFirst("success_url"));
+        session.put("cancel_url", form.getFirst("cancel_url"));
+        session.put("url", "http://stripe-stub.local/pay/" + id);
+        session.put("metadata", nested(form, "metadata"));
+        session.put("subscription", null);
+        session.put("created", now());
+        session.put("_subscription_metadata", nested(form, "subscription_data[metadata]"));
+        sessions.put(id, session);
+        return publicView(session);
+    }
+
+    /**
+     * GET /stripe-stub/v1/checkout/sessions/{id}
+     */
+    @Operation(security = {})
+    @GetMapping("/v1/checkout/sessions/{id}")
+    public Map<String, Object> retrieveSession(@PathVariable String id) {
+        return publicView(session(id));
+    }
+
+    /**
+     * POST /stripe-stub/test/sessions/{id}/complete?deliveries=1
+     * Simula o pagamento: marca a sessão como paga e envia checkout.session.completed
+     * (e invoice.payment_succeeded para assinaturas) "deliveries" vezes com o mesmo event id.
+     */
+    @Operation(security = {})
+    @PostMapping("/test/sessions/{id}/complete")
+    public Map<String, Object> complete(@PathVariable String id,
+                                        @RequestParam(defaultValue = "1") int deliveries) {
+        Map<String, Object> session = session(id);
+        session.put("status", "complete");
+        session.put("payment_status", "paid");
+
+        List<Integer> statuses = new ArrayList<>();
+        if ("subscription".equals(session.get("mode"))) {
+            String subId = "sub_test_" + UUID.randomUUID().toString().replace("-", "");
+            Map<String, Object> sub = new LinkedHashMap<>();
+            sub.put("id", subId);
+            sub.put("object", "subscription");
+            sub.put("status", "active");
+            sub.put("metadata", session.get("_subscription_metadata"));
+            subscriptions.put(subId, sub);
+            session.put("subscription", subId);
+
+            statuses.addAll(emit("checkout.session.completed", publicView(session), deliveries));
+            Map<String, Object> invoice = new LinkedHashMap<>();
+            invoice.put("id", "in_test_" + UUID.randomUUID().toString().replace("-", ""));
+            invoice.put("object", "invoice");
+            invoice.put("subscription", subId);
+            invoice.put("status", "paid");
+            invoice.put("subscription_details", Map.of("metadata", sub.get("metadata")));
+            statuses.addAll(emit("invoice.payment_succeeded", invoice, deliveries));
+        } else {
+            statuses.addAll(emit("checkout.session.completed", publicView(session), deliveries));
+        }
+        return Map.of("session", id, "webhookStatuses", statuses);
+    }
+
+    /**
+     * POST /stripe-stub/test/subscriptions/{id}/cancel - envia customer.subscription.deleted
+     */
+    @Operation(security = {})
+    @PostMapping("/test/subscriptions/{id}/cancel")
+    public Map<String, Object> cancel(@PathVariable String id,
+                                      @RequestParam(defaultValue = "1") int deliveries) {
+        Map<String, Object> sub = subscriptions.get(id);
+        if (sub == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Assinatura não encontrada");
+        }
+        sub.put("status", "canceled");
+        return Map.of("subscription", id, "webhookStatuses", emit("customer.subscription.deleted", sub, deliveries));
+    }
+
+    /** Envia o mesmo evento (mesmo id) N vezes, cada entrega com assinatura própria */
+    private List<Integer> emit(String type, Map<String, Object> object, int deliveries) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("id", "evt_test_" + UUID.randomUUID().toString().replace("-", ""));
+        event.put("object", "event");
+        event.put("api_version", Stripe.API_VERSION);
+        event.put("created", now());
+        event.put("type", type);
+        event.put("livemode", false);
+        event.put("data", Map.of("object", object));
+
+        String payload;
+        try {
+            payload = mapper.writeValueAsString(event);
+        } catch (Exception e) {
+            throw new IllegalStateException("Falha ao serializar evento", e);
+        }
+
+        List<Integer> statuses = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, deliveries); i++) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.set("Stripe-Signature", sign(payload));
+            try {
+                ResponseEntity<String> resp = rt.postForEntity(webhookUrl, new HttpEntity<>(payload, headers), String.class);
+                statuses.add(resp.getStatusCode().value());
+            } catch (RestClientException e) {
+                System.err.println("[Stripe Stub] Falha ao entregar " + type + ": " + e.getMessage());
+                statuses.add(-1);
+            }
+        }
+        return statuses;
+    }
+
+    /** Mesmo esquema do Stripe: t=<timestamp>,v1=HMAC-SHA256(secret, "<timestamp>.<payload>") */
+    private String sign(String payload) {
+        long t = now();
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(webhookSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            byte[] sig = mac.doFinal((t + "." + payload).getBytes(StandardCharsets.UTF_8));
+            return "t=" + t + ",v1=" + HexFormat.of().formatHex(sig);
+        } catch (Exception e) {
+            throw new IllegalStateException("Falha ao assinar webhook", e);
+        }
+    }
+
+    private Map<String, Object> session(String id) {
+        Map<String, Object> session = sessions.get(id);
+        if (session == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No such checkout.session: " + id);
+        }
+        return session;
+    }
+
+    /** Remove campos internos do stub (prefixo "_") */
+    private static Map<String, Object> publicView(Map<String, Object> session) {
+        Map<String, Object> view = new LinkedHashMap<>(session);
+        view.keySet().removeIf(k -> k.startsWith("_"));
+        return view;
+    }
+
+    /** Lê parâmetros no formato do Stripe: prefix[chave]=valor */
+    private static Map<String, String> nested(MultiValueMap<String, String> form, String prefix) {
+        Map<String, String> out = new HashMap<>();
+        form.forEach((k, v) -> {
+            if (k.startsWith(prefix + "[") && k.endsWith("]") && !v.isEmpty()) {
+                out.put(k.substring(prefix.length() + 1, k.length() - 1), v.get(0));
+            }
+        });
+        return out;
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
@@ -0,0 +1,37 @@
+package ai.startup.usuario.payment;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Evento de webhook do Stripe já verificado, aguardando processamento (inbox durável).
+ * O _id é o id do evento no Stripe: reentregas do mesmo evento são descartadas no insert.
+ */
+@Data
+@NoArgsConstructor
+@Document("stripe_webhook_inbox")
+@CompoundIndex(name = "status_next", def = "{'status': 1, 'nextAttemptAt': 1}")
+public class StripeWebhookEvent {
+
+    public enum Status { PENDING, PROCESSING, DONE, FAILED }
+
+    @Id
+    private String eventId;
+    private String type;
+    private String payload;        // JSON original do evento
+    private Status status;
+    private int attempts;
+    private Date nextAttemptAt;    // PENDING: quando pode ser tentado
+    private Date lockedUntil;      // PROCESSING: lease do worker
+    private String lastError;
+    private Date receivedAt;
+    private Date processedAt;
+    @Indexed(expireAfterSeconds = 0)
+    private Date expiresAt;        // preenchido ao concluir (DONE)
+}
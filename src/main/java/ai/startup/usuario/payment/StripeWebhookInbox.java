@@ -0,0 +1,296 @@
+package ai.startup.usuario.payment;
+
+import ai.startup.usuario.metrics.MetricsSource;
+import com.stripe.exception.EventDataObjectDeserializationException;
+import com.stripe.model.Event;
+import com.stripe.model.EventDataObjectDeserializer;
+import com.stripe.model.Invoice;
+import com.stripe.model.StripeObject;
+import com.stripe.model.Subscription;
+import com.stripe.model.checkout.Session;
+import com.stripe.net.ApiResource;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pipeline assíncrono dos webhooks do Stripe.
+ *
+ * O controller só verifica a assinatura, grava o evento em stripe_webhook_inbox e responde 200.
+ * Workers reivindicam eventos com findAndModify (lease em lockedUntil, então um worker morto
+ * não prende o evento), processam usando o objeto que veio no próprio evento (sem buscar de
+ * novo no Stripe) e reagendam com backoff exponencial em caso de erro.
+ */
+@Service
+public class StripeWebhookInbox implements MetricsSource {
+
+    private static final long DONE_RETENTION_MS = 30L * 24 * 60 * 60 * 1000;
+
+    private final MongoTemplate mongoTemplate;
+    private final PaymentService paymentService;
+    private final int workers;
+    private final int maxAttempts;
+    private final long leaseMs;
+    private final long backoffBaseMs;
+    private final long backoffMaxMs;
+    private final long pollMs;
+
+    private final Semaphore wakeup = new Semaphore(0);
+    private volatile ExecutorService pool;
+    private volatile boolean running;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public StripeWebhookInbox(MongoTemplate mongoTemplate,
+                              PaymentService paymentService,
+                              @Value("${stripe.webhook.workers:2}") int workers,
+                              @Value("${stripe.webhook.max-attempts:8}") int maxAttempts,
+                              @Value("${stripe.webhook.lease-ms:60000}") long leaseMs,
+                              @Value("${stripe.webhook.backoff-base-ms:2000}") long backoffBaseMs,
+                              @Value("${stripe.webhook.backoff-max-ms:600000}") long backoffMaxMs,
+                              @Value("${stripe.webhook.poll-ms:5000}") long pollMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.paymentService = paymentService;
+        this.workers = Math.max(1, workers);
+        this.maxAttempts = maxAttempts;
+        this.leaseMs = leaseMs;
+        this.backoffBaseMs = backoffBaseMs;
+        this.backoffMaxMs = backoffMaxMs;
+        this.pollMs = pollMs;
+    }
+
+    /**
+     * Grava o evento verificado. false = evento já recebido antes (reentrega do Stripe).
+     * Erros de banco sobem para o controller responder 500 e o Stripe reenviar.
+     */
+    public boolean enqueue(Event event, String payload) {
+        Date now = new Date();
+        StripeWebhookEvent e = new StripeWebhookEvent();
+        e.setEventId(event.getId());
+        e.setType(event.getType());
+        e.setPayload(payload);
+        e.setStatus(StripeWebhookEvent.Status.PENDING);
+        e.setNextAttemptAt(now);
+        e.setReceivedAt(now);
+        try {
+            mongoTemplate.insert(e);
+        } catch (DuplicateKeyException dup) {
+            duplicates.increment();
+            return false;
+        }
+        received.increment();
+        wakeup.release();
+        return true;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        AtomicInteger seq = new AtomicInteger();
+        running = true;
+        pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "stripe-webhook-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < workers; i++) {
+            pool.submit(this::workLoop);
+        }
+        System.out.println("[Payment Webhook] " + workers + " workers iniciados");
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private void workLoop() {
+        while (running) {
+            try {
+                StripeWebhookEvent e = claim();
+                if (e != null) {
+                    handle(e);
+                    continue;
+                }
+                // fila vazia: dorme até um novo evento ou até o próximo poll (retries agendados)
+                wakeup.tryAcquire(pollMs, TimeUnit.MILLISECONDS);
+                wakeup.drainPermits();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                System.err.println("[Payment Webhook] Erro no worker: " + ex.getMessage());
+                sleepQuietly();
+            }
+        }
+    }
+
+    /** Reivindica o próximo evento pronto (PENDING vencido ou PROCESSING com lease expirado) */
+    private StripeWebhookEvent claim() {
+        Date now = new Date();
+        Criteria ready = new Criteria().orOperator(
+                Criteria.where("status").is(StripeWebhookEvent.Status.PENDING).and("nextAttemptAt").lte(now),
+                Criteria.where("status").is(StripeWebhookEvent.Status.PROCESSING).and("lockedUntil").lt(now));
+        Query query = new Query(ready).with(Sort.by(Sort.Direction.ASC, "nextAttemptAt"));
+        Update update = new Update()
+                .set("status", StripeWebhookEvent.Status.PROCESSING)
+                .set("lockedUntil", new Date(now.getTime() + leaseMs))
+                .inc("attempts", 1);
+        return mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(true), StripeWebhookEvent.class);
+    }
+
+    private void handle(StripeWebhookEvent e) {
+        try {
+            dispatch(ApiResource.GSON.fromJson(e.getPayload(), Event.class));
+            finish(e, StripeWebhookEvent.Status.DONE, null, null);
+            processed.increment();
+        } catch (Exception ex) {
+            boolean permanent = isPermanent(ex);
+            if (permanent || e.getAttempts() >= maxAttempts) {
+                failed.increment();
+                finish(e, StripeWebhookEvent.Status.FAILED, ex.getMessage(), null);
+                System.err.println("[Payment Webhook] ❌ Evento " + e.getEventId() + " (" + e.getType() + ") falhou definitivamente: " + ex.getMessage());
+            } else {
+                retries.increment();
+                Date next = new Date(System.currentTimeMillis() + backoff(e.getAttempts()));
+                finish(e, StripeWebhookEvent.Status.PENDING, ex.getMessage(), next);
+                System.err.println("[Payment Webhook] Evento " + e.getEventId() + " tentativa " + e.getAttempts() + " falhou, nova tentativa em " + next + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    private void dispatch(Event event) {
+        System.out.println("[Payment Webhook] Processando evento " + event.getId() + ": " + event.getType());
+        switch (event.getType()) {
+            case "checkout.session.completed" -> {
+                // Pagamento único ou assinatura iniciada
+                Session session = (Session) dataObject(event);
+                paymentService.applyCheckoutSession(session);
+            }
+            case "invoice.payment_succeeded" -> {
+                // Renovação de assinatura bem-sucedida
+                Invoice invoice = (Invoice) dataObject(event);
+                String userId = invoice.getSubscriptionDetails() != null && invoice.getSubscriptionDetails().getMetadata() != null
+                        ? invoice.getSubscriptionDetails().getMetadata().get("userId")
+                        : null;
+                if (userId == null) {
+                    System.out.println("[Payment Webhook] Invoice " + invoice.getId() + " sem userId na assinatura, ignorando");
+                    return;
+                }
+                paymentService.renewSubscription(userId, PaymentService.epochSeconds(event.getCreated()));
+            }
+            case "customer.subscription.deleted" -> {
+                // Assinatura cancelada
+                Subscription subscription = (Subscription) dataObject(event);
+                String userId = subscription.getMetadata() != null ? subscription.getMetadata().get("userId") : null;
+                if (userId == null) {
+                    System.out.println("[Payment Webhook] Assinatura " + subscription.getId() + " sem userId, ignorando");
+                    return;
+                }
+                paymentService.cancelSubscription(userId, PaymentService.epochSeconds(event.getCreated()), subscription.getId());
+            }
+            default -> System.out.println("[Payment Webhook] Evento não tratado: " + event.getType());
+        }
+    }
+
+    private static StripeObject dataObject(Event event) {
+        EventDataObjectDeserializer deserializer = event.getDataObjectDeserializer();
+        if (deserializer.getObject().isPresent()) {
+            return deserializer.getObject().get();
+        }
+        try {
+            // versão de API do evento diferente da do SDK
+            return deserializer.deserializeUnsafe();
+        } catch (EventDataObjectDeserializationException ex) {
+            throw new IllegalArgumentException("Não foi possível deserializar o evento: " + ex.getMessage());
+        }
+    }
+
+    /** Erros de dados (metadata/produto/usuário inválido) não adiantam tentar de novo */
+    private static boolean isPermanent(Exception ex) {
+        if (ex instanceof IllegalArgumentException || ex instanceof ClassCastException) return true;
+        return ex instanceof ResponseStatusException rse && rse.getStatusCode().is4xxClientError();
+    }
+
+    private long backoff(int attempts) {
+        long exp = backoffBaseMs << Math.min(attempts - 1, 20);
+        long capped = Math.min(Math.max(exp, backoffBaseMs), backoffMaxMs);
+        return capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1);
+    }
+
+    private void finish(StripeWebhookEvent e, StripeWebhookEvent.Status status, String error, Date nextAttemptAt) {
+        Date now = new Date();
+        Update update = new Update()
+                .set("status", status)
+                .set("lastError", error)
+                .unset("lockedUntil");
+        if (status == StripeWebhookEvent.Status.PENDING) {
+            update.set("nextAttemptAt", nextAttemptAt);
+        } else {
+            update.set("processedAt", now);
+        }
+        if (status == StripeWebhookEvent.Status.DONE) {
+            update.set("expiresAt", new Date(now.getTime() + DONE_RETENTION_MS));
+        }
+        // só conclui se ainda for dono do lease (outro worker pode ter reivindicado após expirar)
+        Query owned = new Query(Criteria.where("_id").is(e.getEventId())
+                .and("status").is(StripeWebhookEvent.Status.PROCESSING)
+                .and("attempts").is(e.getAttempts()));
+        mongoTemplate.updateFirst(owned, update, StripeWebhookEvent.class);
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(pollMs);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "stripeWebhooks";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("workers", workers);
+        m.put("received", received.sum());
+        m.put("duplicates", duplicates.sum());
+        m.put("processed", processed.sum());
+        m.put("retries", retries.sum());
+        m.put("failed", failed.sum());
+        m.put("pending", mongoTemplate.count(
+                new Query(Criteria.where("status").is(StripeWebhookEvent.Status.PENDING)), StripeWebhookEvent.class));
+        return m;
+    }
+}
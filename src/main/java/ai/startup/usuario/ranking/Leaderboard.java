@@ -0,0 +1,144 @@
+package ai.startup.usuario.ranking;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Ranking em memória de uma métrica (ex: XP desempatando por streak).
+ *
+ * Ordem: primary desc, secondary desc, userId asc. Atualizações e consultas
+ * não dependem do total de usuários além do O(log n) do índice.
+ */
+public final class Leaderboard {
+
+    public record Entry(String userId, long primary, long secondary) {}
+
+    /** Trecho do ranking começando na posição firstRank (1-based) */
+    public record Page(int firstRank, List<Entry> entries) {}
+
+    /** Posição de um usuário: rank 1-based, total e vizinhos (já em ordem) */
+    public record Position(int rank, int total, int firstNeighbourRank, List<Entry> neighbours) {}
+
+    static final Comparator<Entry> ORDER = Comparator
+            .comparingLong(Entry::primary).reversed()
+            .thenComparing(Comparator.comparingLong(Entry::secondary).reversed())
+            .thenComparing(Entry::userId);
+
+    private final RankedSet<Entry> index = new RankedSet<>(ORDER);
+    private final Map<String, Entry> byUser = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Insere ou move o usuário para a nova pontuação */
+    public void upsert(String userId, long primary, long secondary) {
+        Entry next = new Entry(userId, primary, secondary);
+        lock.writeLock().lock();
+        try {
+            Entry prev = byUser.put(userId, next);
+            if (prev != null) {
+                if (prev.equals(next)) return;
+                index.remove(prev);
+            }
+            index.insert(next);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Insere apenas se o usuário ainda não estiver no ranking (carga inicial) */
+    public void seed(String userId, long primary, long secondary) {
+        lock.writeLock().lock();
+        try {
+            if (byUser.containsKey(userId)) return;
+            Entry e = new Entry(userId, primary, secondary);
+            byUser.put(userId, e);
+            index.insert(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String userId) {
+        lock.writeLock().lock();
+        try {
+            Entry prev = byUser.remove(userId);
+            if (prev != null) index.remove(prev);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Entrada atual do usuário, ou null se ele não estiver no ranking */
+    public Entry get(String userId) {
+        lock.readLock().lock();
+        try {
+            return byUser.get(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Cópia dos usuários presentes (reconciliação) */
+    public Set<String> userIds() {
+        lock.readLock().lock();
+        try {
+            return new HashSet<>(byUser.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Os n primeiros colocados, em ordem */
+    public List<Entry> top(int n) {
+        lock.readLock().lock();
+        try {
+            return index.range(0, n);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Posição do usuário e até k vizinhos acima e abaixo, ou null se ele não estiver no ranking
+     */
+    public Position position(String userId, int k) {
+        lock.readLock().lock();
+        try {
+            Entry e = byUser.get(userId);
+            if (e == null) return null;
+            int idx = index.indexOf(e);
+            int from = Math.max(0, idx - k);
+            return new Position(idx + 1, index.size(), from + 1, index.range(from, idx - from + k + 1));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Até n entradas estritamente depois de cursor (que pode nem existir mais).
+     * A posição é achada em O(log n), então qualquer página custa o mesmo que a primeira.
+     */
+    public Page after(Entry cursor, int n) {
+        lock.readLock().lock();
+        try {
+            int from = cursor == null ? 0 : index.countBefore(cursor);
+            if (cursor != null && from < index.size() && index.get(from).equals(cursor)) from++;
+            return new Page(from + 1, index.range(from, n));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package ai.startup.usuario.ranking;
+
+import ai.startup.usuario.cache.CacheRegion;
+import ai.startup.usuario.cache.InvalidationBus;
+import ai.startup.usuario.metrics.MetricsSource;
+import ai.startup.usuario.usuario.Usuario;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Rankings de XP e de streak mantidos em memória: um global e um por prática
+ * (selectedPractices, ex: "sat-math").
+ *
+ * Carregados na subida da aplicação com um cursor projetado (_id, xp, streaks,
+ * selectedPractices) e atualizados por quem altera xp/streaks/práticas
+ * (UsuarioService, StreakService). Enquanto a carga não termina, {@link #isReady()}
+ * é false e os chamadores continuam usando a consulta no Mongo; se a carga falhar ela é
+ * refeita com backoff.
+ *
+ * O Mongo é a fonte da verdade: toda atualização (local ou de outra instância, via
+ * InvalidationBus região USUARIO) marca o usuário como sujo e a thread leaderboard-sync o
+ * relê a cada ranking.sync.refresh-ms. Como a releitura começa depois da escrita que a
+ * causou, uma atualização local fora de ordem é corrigida na releitura seguinte. A cada
+ * ranking.sync.reconcile-ms o ranking inteiro é comparado com o Mongo (divergências e
+ * usuários removidos entram na mesma fila).
+ *
+ * Cada segmento guarda todos os usuários da prática (um corte em top-N perderia quem
+ * sobe quando alguém acima cai). O número de segmentos é limitado por
+ * ranking.segment.max-segments; práticas além do limite ficam sem ranking em memória e
+ * {@link #overflowed(String)} avisa os chamadores para usarem o Mongo.
+ */
+@Service
+public class LeaderboardService implements MetricsSource {
+
+    private static final int REFRESH_CHUNK = 1000;
+    private static final long MAX_SEED_BACKOFF_MS = 60_000L;
+
+    private final MongoTemplate mongoTemplate;
+    private final int maxSegments;
+    private final long refreshMs;
+    private final long reconcileMs;
+
+    private volatile Boards global = new Boards();
+    private final ConcurrentHashMap<String, Boards> segments = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> practicesByUser = new ConcurrentHashMap<>();
+    private final Set<String> overflowPractices = ConcurrentHashMap.newKeySet();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private volatile boolean ready = false;
+    private volatile long seedMillis = -1;
+    private ScheduledExecutorService sync;
+
+    private final LongAdder seedAttempts = new LongAdder();
+    private final LongAdder refreshedUsers = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+    private final LongAdder reconciles = new LongAdder();
+    private final LongAdder reconcileFixes = new LongAdder();
+
+    public LeaderboardService(MongoTemplate mongoTemplate,
+                              InvalidationBus bus,
+                              @Value("${ranking.segment.max-segments:50}") int maxSegments,
+                              @Value("${ranking.sync.refresh-ms:1000}") long refreshMs,
+                              @Value("${ranking.sync.reconcile-ms:600000}") long reconcileMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.maxSegments = maxSegments;
+        this.refreshMs = Math.max(1, refreshMs);
+        this.reconcileMs = Math.max(1, reconcileMs);
+        // escritas em outras instâncias: relê o usuário do Mongo em vez de confiar na ordem das mensagens
+        bus.subscribe(CacheRegion.USUARIO, dirty::addAll, this::requestReconcile);
+    }
+
+    /** xp desc/streaks desc e streaks desc/xp desc do mesmo conjunto de usuários */
+    private static final class Boards {
+        final Leaderboard xp = new Leaderboard();
+        final Leaderboard streak = new Leaderboard();
+
+        Leaderboard get(RankingMetric metric) {
+            return metric == RankingMetric.STREAK ? streak : xp;
+        }
+
+        void upsert(String userId, long xpScore, long streaks) {
+            xp.upsert(userId, xpScore, streaks);
+            streak.upsert(userId, streaks, xpScore);
+        }
+
+        void seed(String userId, long xpScore, long streaks) {
+            xp.seed(userId, xpScore, streaks);
+            streak.seed(userId, streaks, xpScore);
+        }
+
+        void remove(String userId) {
+            xp.remove(userId);
+            streak.remove(userId);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        sync = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "leaderboard-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        sync.execute(() -> seedWithRetry(0));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (sync != null) sync.shutdownNow();
+    }
+
+    /** Tenta a carga; se falhar agenda outra tentativa (1s, 2s, 4s... até 60s) */
+    private void seedWithRetry(int attempt) {
+        if (seed()) {
+            sync.scheduleWithFixedDelay(this::refreshSafely, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+            sync.scheduleWithFixedDelay(this::reconcileSafely, reconcileMs, reconcileMs, TimeUnit.MILLISECONDS);
+            return;
+        }
+        long backoff = Math.min(MAX_SEED_BACKOFF_MS, 1000L << Math.min(attempt, 6));
+        sync.schedule(() -> seedWithRetry(attempt + 1), backoff, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean seed() {
+        seedAttempts.increment();
+        // recomeça do zero: uma tentativa anterior pode ter parado no meio
+        global = new Boards();
+        segments.clear();
+        practicesByUser.clear();
+        overflowPractices.clear();
+
+        long start = System.currentTimeMillis();
+        Query query = new Query();
+        query.fields().include("xp").include("streaks").include("selectedPractices");
+        query.cursorBatchSize(2000);
+
+        try (Stream<Usuario> users = mongoTemplate.stream(query, Usuario.class)) {
+            users.forEach(u -> {
+                long xp = nz(u.getXp());
+                long streaks = nz(u.getStreaks());
+                global.seed(u.getId(), xp, streaks);
+
+                Set<String> practices = normalize(u.getSelectedPractices());
+                if (!practices.isEmpty() && practicesByUser.putIfAbsent(u.getId(), practices) == null) {
+                    for (String p : practices) {
+                        Boards seg = segment(p);
+                        if (seg == null) continue;
+                        seg.seed(u.getId(), xp, streaks);
+                    }
+                }
+            });
+            ready = true;
+            seedMillis = System.currentTimeMillis() - start;
+            System.out.println("[Ranking] Leaderboards carregados: " + global.xp.size() + " usuários, "
+                    + segments.size() + " práticas em " + seedMillis + " ms");
+            return true;
+        } catch (Exception e) {
+            System.err.println("[Ranking] Falha ao carregar leaderboards (usando Mongo, nova tentativa): " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void refreshSafely() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            System.err.println("[Ranking] Erro inesperado na sincronização: " + e.getMessage());
+        }
+    }
+
+    /** Relê do Mongo os usuários sujos e aplica o estado atual (ou remove quem não existe mais) */
+    void refresh() {
+        if (!ready || dirty.isEmpty()) return;
+        List<String> ids = new ArrayList<>();
+        for (Iterator<String> it = dirty.iterator(); it.hasNext(); ) {
+            ids.add(it.next());
+            it.remove(); // marcado de novo durante a releitura = relido na próxima rodada
+        }
+        for (int i = 0; i < ids.size(); i += REFRESH_CHUNK) {
+            List<String> chunk = ids.subList(i, Math.min(ids.size(), i + REFRESH_CHUNK));
+            try {
+                Query query = new Query(Criteria.where("_id").in(chunk));
+                query.fields().include("xp").include("streaks").include("selectedPractices");
+                Set<String> missing = new HashSet<>(chunk);
+                for (Usuario u : mongoTemplate.find(query, Usuario.class)) {
+                    missing.remove(u.getId());
+                    apply(u.getId(), nz(u.getXp()), nz(u.getStreaks()), normalize(u.getSelectedPractices()));
+                }
+                missing.forEach(this::removeLocal);
+                refreshedUsers.add(chunk.size());
+            } catch (Exception e) {
+                dirty.addAll(chunk);
+                refreshFailures.increment();
+                System.err.println("[Ranking] Falha ao reler " + chunk.size() + " usuários: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Invalidações podem ter se perdido (cursor do barramento reaberto): reconcilia já */
+    private void requestReconcile() {
+        ScheduledExecutorService s = sync;
+        if (s != null && ready) s.execute(this::reconcileSafely);
+    }
+
+    private void reconcileSafely() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            System.err.println("[Ranking] Falha na reconciliação: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compara o ranking com o Mongo (cursor projetado) e marca como sujo quem divergiu ou
+     * sumiu; a correção em si passa pela releitura normal, que lê o valor mais recente
+     */
+    void reconcile() {
+        if (!ready) return;
+        Boards board = global;
+        Set<String> notSeen = board.xp.userIds();
+        int[] fixes = {0};
+        Query query = new Query();
+        query.fields().include("xp").include("streaks").include("selectedPractices");
+        query.cursorBatchSize(2000);
+        try (Stream<Usuario> users = mongoTemplate.stream(query, Usuario.class)) {
+            users.forEach(u -> {
+                notSeen.remove(u.getId());
+                Leaderboard.Entry e = board.xp.get(u.getId());
+                Set<String> known = practicesByUser.getOrDefault(u.getId(), Set.of());
+                if (e == null || e.primary() != nz(u.getXp()) || e.secondary() != nz(u.getStreaks())
+                        || !known.equals(normalize(u.getSelectedPractices()))) {
+                    dirty.add(u.getId());
+                    fixes[0]++;
+                }
+            });
+        }
+        dirty.addAll(notSeen);
+        fixes[0] += notSeen.size();
+        reconciles.increment();
+        reconcileFixes.add(fixes[0]);
+        if (fixes[0] > 0) {
+            System.out.println("[Ranking] Reconciliação: " + fixes[0] + " usuários divergentes");
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /** Atualiza pontuação e práticas do usuário (documento completo) */
+    public void update(Usuario u) {
+        if (u == null || u.getId() == null) return;
+        apply(u.getId(), nz(u.getXp()), nz(u.getStreaks()), normalize(u.getSelectedPractices()));
+        dirty.add(u.getId());
+    }
+
+    /** Atualiza só a pontuação, mantendo as práticas já conhecidas */
+    public void update(String userId, long xp, long streaks) {
+        apply(userId, xp, streaks, null);
+        dirty.add(userId);
+    }
+
+    public void remove(String userId) {
+        removeLocal(userId);
+        dirty.add(userId);
+    }
+
+    private void removeLocal(String userId) {
+        global.remove(userId);
+        Set<String> practices = practicesByUser.remove(userId);
+        if (practices != null) {
+            for (String p : practices) {
+                Boards seg = segments.get(p);
+                if (seg != null) seg.remove(userId);
+            }
+        }
+    }
+
+    /** Ranking global (practice == null) ou da prática; null se a prática não tiver ranking */
+    public Leaderboard board(RankingMetric metric, String practice) {
+        if (practice == null || practice.isBlank()) return global.get(metric);
+        Boards seg = segments.get(practice.trim().toLowerCase());
+        return seg == null ? null : seg.get(metric);
+    }
+
+    public Leaderboard board(RankingMetric metric) {
+        return global.get(metric);
+    }
+
+    private void apply(String userId, long xp, long streaks, Set<String> newPractices) {
+        global.upsert(userId, xp, streaks);
+
+        // compute serializa as mudanças de segmento do mesmo usuário
+        practicesByUser.compute(userId, (id, old) -> {
+            Set<String> current = newPractices != null ? newPractices : (old != null ? old : Set.of());
+            if (old != null) {
+                for (String p : old) {
+                    if (current.contains(p)) continue;
+                    Boards seg = segments.get(p);
+                    if (seg != null) seg.remove(id);
+                }
+            }
+            for (String p : current) {
+                Boards seg = segment(p);
+                if (seg == null) continue;
+                seg.upsert(id, xp, streaks);
+            }
+            return current.isEmpty() ? null : current;
+        });
+    }
+
+    /**
+     * True se a prática tem usuários mas ficou sem ranking em memória por causa de
+     * ranking.segment.max-segments (a consulta precisa ir ao Mongo)
+     */
+    public boolean overflowed(String practice) {
+        return practice != null && overflowPractices.contains(practice.trim().toLowerCase());
+    }
+
+    /** Segmento da prática (criado sob demanda até ranking.segment.max-segments) */
+    private Boards segment(String practice) {
+        Boards seg = segments.get(practice);
+        if (seg != null) return seg;
+        if (segments.size() >= maxSegments) {
+            if (overflowPractices.add(practice)) {
+                System.err.println("[Ranking] Limite de " + maxSegments + " práticas atingido; '" + practice
+                        + "' fica sem ranking em memória");
+            }
+            return null;
+        }
+        return segments.computeIfAbsent(practice, __ -> new Boards());
+    }
+
+    private static Set<String> normalize(List<String> practices) {
+        if (practices == null || practices.isEmpty()) return Set.of();
+        Set<String> out = new HashSet<>();
+        for (String p : practices) {
+            if (p != null && !p.isBlank()) out.add(p.trim().toLowerCase());
+        }
+        return Set.copyOf(out);
+    }
+
+    @Override
+    public String metricsName() {
+        return "leaderboard";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("ready", ready);
+        m.put("users", global.xp.size());
+        m.put("seedMillis", seedMillis);
+        m.put("seedAttempts", seedAttempts.sum());
+        m.put("dirty", dirty.size());
+        m.put("refreshedUsers", refreshedUsers.sum());
+        m.put("refreshFailures", refreshFailures.sum());
+        m.put("reconciles", reconciles.sum());
+        m.put("reconcileFixes", reconcileFixes.sum());
+        Map<String, Integer> segs = new LinkedHashMap<>();
+        segments.forEach((p, b) -> segs.put(p, b.xp.size()));
+        m.put("segments", segs);
+        m.put("overflowPractices", List.copyOf(overflowPractices));
+        return m;
+    }
+
+    private static long nz(Long v) {
+        return v != null ? v : 0L;
+    }
+}
@@ -0,0 +1,14 @@
+package ai.startup.usuario.ranking;
+
+import java.util.List;
+
+/**
+ * Posição do usuário autenticado no ranking (ex: "#4.312 de 58.000")
+ */
+public record MyRankDTO(
+        String metric,
+        int rank,
+        int total,
+        double percentile,              // % de usuários com posição igual ou pior (100 = primeiro lugar)
+        List<RankingEntryDTO> neighbours // até k acima e k abaixo, incluindo o próprio usuário
+) {}
@@ -0,0 +1,188 @@
+package ai.startup.usuario.ranking;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Conjunto ordenado com estatística de ordem (treap com tamanho de subárvore).
+ *
+ * insert/remove/rank/get em O(log n); range(from, count) em O(log n + count).
+ * Não é thread-safe: quem usa (Leaderboard) faz o controle de concorrência.
+ */
+final class RankedSet<E> {
+
+    private final Comparator<? super E> cmp;
+    private Node<E> root;
+
+    RankedSet(Comparator<? super E> cmp) {
+        this.cmp = cmp;
+    }
+
+    private static final class Node<E> {
+        final E value;
+        final int priority = ThreadLocalRandom.current().nextInt();
+        Node<E> left, right;
+        int size = 1;
+
+        Node(E value) {
+            this.value = value;
+        }
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    void clear() {
+        root = null;
+    }
+
+    /** Insere; retorna false se já existia elemento igual (cmp == 0) */
+    boolean insert(E value) {
+        if (indexOf(value) >= 0) return false;
+        Node<E>[] parts = split(root, value);
+        root = merge(merge(parts[0], new Node<>(value)), parts[1]);
+        return true;
+    }
+
+    /** Remove; retorna false se não existia */
+    boolean remove(E value) {
+        int before = size(root);
+        root = remove(root, value);
+        return size(root) != before;
+    }
+
+    /** Posição (0 = primeiro) do elemento, ou -1 se não existir */
+    int indexOf(E value) {
+        Node<E> n = root;
+        int offset = 0;
+        while (n != null) {
+            int c = cmp.compare(value, n.value);
+            if (c == 0) return offset + size(n.left);
+            if (c < 0) {
+                n = n.left;
+            } else {
+                offset += size(n.left) + 1;
+                n = n.right;
+            }
+        }
+        return -1;
+    }
+
+    /** Quantos elementos vêm antes de value (value não precisa existir) */
+    int countBefore(E value) {
+        Node<E> n = root;
+        int count = 0;
+        while (n != null) {
+            if (cmp.compare(value, n.value) <= 0) {
+                n = n.left;
+            } else {
+                count += size(n.left) + 1;
+                n = n.right;
+            }
+        }
+        return count;
+    }
+
+    /** Elemento na posição index (0-based) */
+    E get(int index) {
+        if (index < 0 || index >= size(root)) throw new IndexOutOfBoundsException(index);
+        Node<E> n = root;
+        while (true) {
+            int ls = size(n.left);
+            if (index < ls) {
+                n = n.left;
+            } else if (index == ls) {
+                return n.value;
+            } else {
+                index -= ls + 1;
+                n = n.right;
+            }
+        }
+    }
+
+    /** Até count elementos a partir da posição from, em ordem */
+    List<E> range(int from, int count) {
+        List<E> out = new ArrayList<>(Math.max(0, Math.min(count, size(root) - from)));
+        if (count > 0 && from >= 0) collect(root, from, count, out);
+        return out;
+    }
+
+    /** Último elemento (ou null se vazio) */
+    E last() {
+        Node<E> n = root;
+        if (n == null) return null;
+        while (n.right != null) n = n.right;
+        return n.value;
+    }
+
+    private void collect(Node<E> n, int from, int count, List<E> out) {
+        // percorre em ordem pulando subárvores inteiras que ficam antes de "from"
+        while (n != null && out.size() < count) {
+            int ls = size(n.left);
+            if (from < ls) {
+                collect(n.left, from, count, out);
+                if (out.size() >= count) return;
+                out.add(n.value);
+                from = 0;
+            } else if (from == ls) {
+                out.add(n.value);
+                from = 0;
+            } else {
+                from -= ls + 1;
+            }
+            n = n.right;
+        }
+    }
+
+    private Node<E> remove(Node<E> n, E value) {
+        if (n == null) return null;
+        int c = cmp.compare(value, n.value);
+        if (c == 0) return merge(n.left, n.right);
+        if (c < 0) n.left = remove(n.left, value);
+        else n.right = remove(n.right, value);
+        update(n);
+        return n;
+    }
+
+    /** Divide em (< value, >= value) */
+    @SuppressWarnings("unchecked")
+    private Node<E>[] split(Node<E> n, E value) {
+        if (n == null) return new Node[]{null, null};
+        if (cmp.compare(n.value, value) < 0) {
+            Node<E>[] parts = split(n.right, value);
+            n.right = parts[0];
+            update(n);
+            parts[0] = n;
+            return parts;
+        }
+        Node<E>[] parts = split(n.left, value);
+        n.left = parts[1];
+        update(n);
+        parts[1] = n;
+        return parts;
+    }
+
+    private Node<E> merge(Node<E> a, Node<E> b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        update(b);
+        return b;
+    }
+
+    private static void update(Node<?> n) {
+        n.size = 1 + size(n.left) + size(n.right);
+    }
+
+    private static int size(Node<?> n) {
+        return n == null ? 0 : n.size;
+    }
+}
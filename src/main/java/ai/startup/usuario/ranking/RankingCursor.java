@@ -0,0 +1,32 @@
+package ai.startup.usuario.ranking;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Cursor opaco de paginação do ranking: última posição entregue + (pontuação, desempate, id)
+ */
+record RankingCursor(int rank, long primary, long secondary, String userId) {
+
+    String encode() {
+        String raw = rank + ":" + primary + ":" + secondary + ":" + userId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static RankingCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] p = raw.split(":", 4);
+            return new RankingCursor(Integer.parseInt(p[0]), Long.parseLong(p[1]), Long.parseLong(p[2]), p[3]);
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cursor inválido.");
+        }
+    }
+
+    Leaderboard.Entry toEntry() {
+        return new Leaderboard.Entry(userId, primary, secondary);
+    }
+}
@@ -0,0 +1,13 @@
+package ai.startup.usuario.ranking;
+
+/**
+ * Linha de ranking (apenas campos públicos do leaderboard)
+ */
+public record RankingEntryDTO(
+        int rank,
+        String id,
+        String nome,
+        String sobrenome,
+        Long xp,
+        Long streaks
+) {}
@@ -0,0 +1,20 @@
+package ai.startup.usuario.ranking;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Métricas de ranking disponíveis
+ */
+public enum RankingMetric {
+    XP,      // xp desc, desempate por streaks
+    STREAK;  // streaks desc, desempate por xp
+
+    /** "xp" | "streak" (como aparece na URL) */
+    public static RankingMetric fromPath(String value) {
+        for (RankingMetric m : values()) {
+            if (m.name().equalsIgnoreCase(value)) return m;
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Métrica de ranking inválida: " + value);
+    }
+}
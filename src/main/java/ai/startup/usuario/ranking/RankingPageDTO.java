@@ -0,0 +1,11 @@
+package ai.startup.usuario.ranking;
+
+import java.util.List;
+
+/**
+ * Página do ranking; nextCursor == null quando não há mais páginas
+ */
+public record RankingPageDTO(
+        List<RankingEntryDTO> items,
+        String nextCursor
+) {}
@@ -0,0 +1,207 @@
+package ai.startup.usuario.ranking;
+
+import ai.startup.usuario.usuario.Usuario;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class RankingService {
+
+    private static final int MAX_NEIGHBOURS = 25;
+    private static final int MAX_PAGE = 100;
+
+    private final LeaderboardService leaderboard;
+    private final XpWindowService xpWindows;
+    private final MongoTemplate mongoTemplate;
+
+    public RankingService(LeaderboardService leaderboard, XpWindowService xpWindows, MongoTemplate mongoTemplate) {
+        this.leaderboard = leaderboard;
+        this.xpWindows = xpWindows;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Página do ranking de XP da semana/mês corrente (XP ganho no período)
+     */
+    public RankingPageDTO windowPage(XpWindow window, int limit, String cursor) {
+        int size = limit > 0 ? Math.min(limit, MAX_PAGE) : MAX_PAGE;
+        RankingCursor after = cursor == null || cursor.isBlank() ? null : RankingCursor.decode(cursor);
+        Leaderboard.Page page = windowBoard(window).after(after == null ? null : after.toEntry(), size);
+        return toPage(windowEntries(page.entries(), page.firstRank()), page, size);
+    }
+
+    /**
+     * Posição do usuário no ranking de XP da semana/mês corrente
+     */
+    public MyRankDTO myWindowRank(XpWindow window, String userId, int k) {
+        Leaderboard.Position pos = windowBoard(window).position(userId, Math.max(0, Math.min(k, MAX_NEIGHBOURS)));
+        if (pos == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário ainda não ganhou XP neste período");
+        }
+        return toMyRank("xp-" + window.name().toLowerCase(), pos, windowEntries(pos.neighbours(), pos.firstNeighbourRank()));
+    }
+
+    /**
+     * Página do ranking (global ou da prática) a partir do cursor (null = primeira página).
+     *
+     * Com o leaderboard carregado a página sai do índice em memória; antes disso (ou para
+     * práticas além do limite de segmentos) usa paginação keyset no Mongo (índices
+     * ranking_xp / ranking_streak), nunca skip/offset.
+     */
+    public RankingPageDTO page(RankingMetric metric, String practice, int limit, String cursor) {
+        int size = limit > 0 ? Math.min(limit, MAX_PAGE) : MAX_PAGE;
+        RankingCursor after = cursor == null || cursor.isBlank() ? null : RankingCursor.decode(cursor);
+
+        Leaderboard.Page page;
+        if (leaderboard.isReady() && !leaderboard.overflowed(practice)) {
+            Leaderboard board = leaderboard.board(metric, practice);
+            if (board == null) return new RankingPageDTO(List.of(), null);
+            page = board.after(after == null ? null : after.toEntry(), size);
+        } else {
+            page = keysetPage(metric, practice, after, size);
+        }
+
+        return toPage(toEntries(metric, page.entries(), page.firstRank()), page, size);
+    }
+
+    /**
+     * Posição do usuário no ranking (O(log n) no índice em memória) com k vizinhos de cada lado
+     */
+    public MyRankDTO myRank(RankingMetric metric, String practice, String userId, int k) {
+        if (!leaderboard.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Ranking ainda está sendo carregado.");
+        }
+        int neighbours = Math.max(0, Math.min(k, MAX_NEIGHBOURS));
+        if (leaderboard.overflowed(practice)) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Ranking da prática indisponível: limite de práticas em memória atingido.");
+        }
+        Leaderboard board = leaderboard.board(metric, practice);
+        Leaderboard.Position pos = board == null ? null : board.position(userId, neighbours);
+        if (pos == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não está no ranking");
+        }
+
+        return toMyRank(metric.name().toLowerCase(), pos, toEntries(metric, pos.neighbours(), pos.firstNeighbourRank()));
+    }
+
+    private Leaderboard windowBoard(XpWindow window) {
+        Leaderboard board = xpWindows.board(window);
+        if (board == null) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Ranking ainda está sendo carregado.");
+        }
+        return board;
+    }
+
+    private static RankingPageDTO toPage(List<RankingEntryDTO> items, Leaderboard.Page page, int size) {
+        String next = null;
+        if (items.size() == size) {
+            Leaderboard.Entry last = page.entries().get(page.entries().size() - 1);
+            next = new RankingCursor(page.firstRank() + size - 1, last.primary(), last.secondary(), last.userId()).encode();
+        }
+        return new RankingPageDTO(items, next);
+    }
+
+    private static MyRankDTO toMyRank(String metric, Leaderboard.Position pos, List<RankingEntryDTO> neighbours) {
+        double percentile = 100.0 * (pos.total() - pos.rank() + 1) / pos.total();
+        return new MyRankDTO(metric, pos.rank(), pos.total(), Math.round(percentile * 100.0) / 100.0, neighbours);
+    }
+
+    /**
+     * Página direto no Mongo: (primary, secondary, _id) depois do cursor, projetado
+     */
+    private Leaderboard.Page keysetPage(RankingMetric metric, String practice, RankingCursor after, int size) {
+        String primary = metric == RankingMetric.XP ? "xp" : "streaks";
+        String secondary = metric == RankingMetric.XP ? "streaks" : "xp";
+
+        Query query = new Query();
+        if (practice != null && !practice.isBlank()) {
+            query.addCriteria(Criteria.where("selectedPractices").is(practice.trim().toLowerCase()));
+        }
+        if (after != null) {
+            query.addCriteria(new Criteria().orOperator(
+                    Criteria.where(primary).lt(after.primary()),
+                    Criteria.where(primary).is(after.primary()).and(secondary).lt(after.secondary()),
+                    Criteria.where(primary).is(after.primary()).and(secondary).is(after.secondary())
+                            .and("_id").gt(after.userId())
+            ));
+        }
+        query.with(Sort.by(Sort.Order.desc(primary), Sort.Order.desc(secondary), Sort.Order.asc("_id")));
+        query.limit(size);
+        query.fields().include("xp").include("streaks");
+
+        List<Leaderboard.Entry> entries = new ArrayList<>(size);
+        for (Usuario u : mongoTemplate.find(query, Usuario.class)) {
+            long xp = u.getXp() != null ? u.getXp() : 0L;
+            long streaks = u.getStreaks() != null ? u.getStreaks() : 0L;
+            entries.add(metric == RankingMetric.XP
+                    ? new Leaderboard.Entry(u.getId(), xp, streaks)
+                    : new Leaderboard.Entry(u.getId(), streaks, xp));
+        }
+        return new Leaderboard.Page(after == null ? 1 : after.rank() + 1, entries);
+    }
+
+    /**
+     * Monta as linhas do ranking: pontuação vem do leaderboard, nome do Mongo (uma consulta projetada)
+     */
+    private List<RankingEntryDTO> toEntries(RankingMetric metric, List<Leaderboard.Entry> entries, int firstRank) {
+        Map<String, Usuario> byId = loadNames(entries.stream().map(Leaderboard.Entry::userId).toList());
+
+        List<RankingEntryDTO> out = new ArrayList<>(entries.size());
+        int rank = firstRank;
+        for (Leaderboard.Entry e : entries) {
+            Usuario u = byId.get(e.userId());
+            long xp = metric == RankingMetric.XP ? e.primary() : e.secondary();
+            long streaks = metric == RankingMetric.XP ? e.secondary() : e.primary();
+            out.add(new RankingEntryDTO(
+                    rank++,
+                    e.userId(),
+                    u != null ? u.getNome() : null,
+                    u != null ? u.getSobrenome() : null,
+                    xp,
+                    streaks
+            ));
+        }
+        return out;
+    }
+
+    /** Linhas do ranking semanal/mensal: xp = XP ganho no período, sem streak */
+    private List<RankingEntryDTO> windowEntries(List<Leaderboard.Entry> entries, int firstRank) {
+        Map<String, Usuario> byId = loadNames(entries.stream().map(Leaderboard.Entry::userId).toList());
+
+        List<RankingEntryDTO> out = new ArrayList<>(entries.size());
+        int rank = firstRank;
+        for (Leaderboard.Entry e : entries) {
+            Usuario u = byId.get(e.userId());
+            out.add(new RankingEntryDTO(
+                    rank++,
+                    e.userId(),
+                    u != null ? u.getNome() : null,
+                    u != null ? u.getSobrenome() : null,
+                    e.primary(),
+                    null
+            ));
+        }
+        return out;
+    }
+
+    private Map<String, Usuario> loadNames(Collection<String> ids) {
+        Map<String, Usuario> byId = new HashMap<>();
+        if (ids.isEmpty()) return byId;
+        Query query = new Query(Criteria.where("_id").in(ids));
+        query.fields().include("nome").include("sobrenome");
+        mongoTemplate.find(query, Usuario.class).forEach(u -> byId.put(u.getId(), u));
+        return byId;
+    }
+}
@@ -0,0 +1,32 @@
+package ai.startup.usuario.ranking;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * XP ganho por um usuário num período (um documento por usuário por semana/mês).
+ * Atualizado com $inc; o TTL em expiresAt apaga os períodos antigos sozinho.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document("xp_buckets")
+@CompoundIndex(name = "window_period_updated", def = "{'window': 1, 'period': 1, 'updatedAt': 1}")
+public class XpBucket {
+    @Id
+    private String id;          // userId:WINDOW:period
+    private String userId;
+    private String window;      // WEEK | MONTH
+    private String period;      // "2026-W42" | "2026-10"
+    private Long xp;
+    private Date updatedAt;     // último $inc (releitura incremental do ranking em outras instâncias)
+    @Indexed(expireAfterSeconds = 0)
+    private Date expiresAt;
+}
@@ -0,0 +1,43 @@
+package ai.startup.usuario.ranking;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.IsoFields;
+import java.util.Date;
+
+/**
+ * Janelas de tempo dos rankings de XP (semana ISO e mês do calendário)
+ */
+public enum XpWindow {
+    WEEK,
+    MONTH;
+
+    /** Identificador do período que contém a data (ex: "2026-W42", "2026-10") */
+    public String period(LocalDate date) {
+        if (this == WEEK) {
+            return String.format("%d-W%02d", date.get(IsoFields.WEEK_BASED_YEAR), date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+        }
+        return String.format("%d-%02d", date.getYear(), date.getMonthValue());
+    }
+
+    /** Quando os buckets do período podem ser apagados (TTL): alguns períodos depois do início */
+    public Date expiresAt(LocalDate date) {
+        LocalDate expiry = this == WEEK
+                ? date.with(DayOfWeek.MONDAY).plusWeeks(5)
+                : date.withDayOfMonth(1).plusMonths(4);
+        return Date.from(expiry.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    /** "week" | "month"; null/"all" = sem janela (XP total) */
+    public static XpWindow fromParam(String value) {
+        if (value == null || value.isBlank() || "all".equalsIgnoreCase(value)) return null;
+        for (XpWindow w : values()) {
+            if (w.name().equalsIgnoreCase(value)) return w;
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Janela de ranking inválida: " + value);
+    }
+}
@@ -0,0 +1,219 @@
+package ai.startup.usuario.ranking;
+
+import ai.startup.usuario.metrics.MetricsSource;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Rankings de XP semanal e mensal.
+ *
+ * Cada mudança de XP vira um $inc no bucket do período corrente (xp_buckets) e
+ * atualiza o ranking em memória do período. Na virada da semana/mês o ranking
+ * em memória é trocado por um vazio; os buckets antigos expiram via TTL.
+ *
+ * O Mongo é a fonte da verdade: a thread xp-window-sync relê a cada
+ * ranking.window.refresh-ms os buckets do período alterados desde a última leitura
+ * (updatedAt), o que traz o XP registrado por outras instâncias, e a cada
+ * ranking.window.reconcile-ms relê o período inteiro.
+ */
+@Service
+public class XpWindowService implements MetricsSource {
+
+    /** Folga para relógios de instâncias diferentes ao comparar updatedAt */
+    private static final long CLOCK_SKEW_MS = 5_000L;
+
+    private final MongoTemplate mongoTemplate;
+    private final long refreshMs;
+    private final long reconcileMs;
+    private final Map<XpWindow, WindowBoard> boards = new ConcurrentHashMap<>();
+    private final Map<XpWindow, Long> syncedAt = new ConcurrentHashMap<>(); // início da última leitura do Mongo
+    private ScheduledExecutorService sync;
+
+    private final LongAdder refreshedBuckets = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+
+    /** Ranking em memória de um período; ready = já carregado do Mongo */
+    private record WindowBoard(String period, Leaderboard board, boolean ready) {}
+
+    public XpWindowService(MongoTemplate mongoTemplate,
+                           @Value("${ranking.window.refresh-ms:5000}") long refreshMs,
+                           @Value("${ranking.window.reconcile-ms:600000}") long reconcileMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.refreshMs = Math.max(1, refreshMs);
+        this.reconcileMs = Math.max(1, reconcileMs);
+        LocalDate today = LocalDate.now();
+        for (XpWindow w : XpWindow.values()) {
+            boards.put(w, new WindowBoard(w.period(today), new Leaderboard(), false));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        for (XpWindow w : XpWindow.values()) {
+            load(w, w.period(LocalDate.now()));
+        }
+        sync = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "xp-window-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        sync.scheduleWithFixedDelay(() -> syncSafely(false), refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+        sync.scheduleWithFixedDelay(() -> syncSafely(true), reconcileMs, reconcileMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (sync != null) sync.shutdownNow();
+    }
+
+    /**
+     * Soma delta (pode ser negativo, ex: recálculo) ao XP do usuário nos períodos correntes
+     */
+    public void recordXpDelta(String userId, long delta) {
+        if (userId == null || delta == 0) return;
+        LocalDate today = LocalDate.now();
+        for (XpWindow w : XpWindow.values()) {
+            String period = w.period(today);
+            try {
+                Query query = new Query(Criteria.where("_id").is(userId + ":" + w.name() + ":" + period));
+                Update update = new Update()
+                        .inc("xp", delta)
+                        .set("updatedAt", new Date())
+                        .setOnInsert("userId", userId)
+                        .setOnInsert("window", w.name())
+                        .setOnInsert("period", period)
+                        .setOnInsert("expiresAt", w.expiresAt(today));
+                XpBucket bucket = mongoTemplate.findAndModify(query, update,
+                        FindAndModifyOptions.options().upsert(true).returnNew(true), XpBucket.class);
+
+                WindowBoard current = boards.get(w);
+                if (bucket != null && current.period().equals(period)) {
+                    current.board().upsert(userId, bucket.getXp() != null ? bucket.getXp() : 0L, 0L);
+                }
+            } catch (Exception e) {
+                System.err.println("[Ranking] Falha ao registrar XP " + w + " de " + userId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** Ranking do período corrente, ou null enquanto ainda não foi carregado */
+    public Leaderboard board(XpWindow window) {
+        WindowBoard wb = boards.get(window);
+        return wb.ready() ? wb.board() : null;
+    }
+
+    /**
+     * Virada de semana/mês: troca o ranking do período anterior por um vazio.
+     * Um período cuja carga falhou é recarregado a cada execução até ficar pronto.
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void rollover() {
+        LocalDate today = LocalDate.now();
+        for (XpWindow w : XpWindow.values()) {
+            String period = w.period(today);
+            WindowBoard current = boards.get(w);
+            if (!current.period().equals(period)) {
+                System.out.println("[Ranking] Novo período " + w + ": " + period);
+                load(w, period);
+            } else if (!current.ready()) {
+                System.out.println("[Ranking] Tentando de novo a carga do ranking " + w + " " + period);
+                load(w, period);
+            }
+        }
+    }
+
+    /** Carrega do Mongo o ranking do período (cursor projetado em userId/xp) */
+    private synchronized void load(XpWindow w, String period) {
+        // nova tentativa do mesmo período reaproveita o board: os updates que já entraram
+        // são mais novos que o Mongo lido agora e seed() não os sobrescreve
+        WindowBoard current = boards.get(w);
+        Leaderboard board = current.period().equals(period) ? current.board() : new Leaderboard();
+        // publica já vazio: updates do novo período começam a entrar enquanto carrega
+        boards.put(w, new WindowBoard(period, board, false));
+        long started = System.currentTimeMillis();
+
+        Query query = new Query(Criteria.where("window").is(w.name()).and("period").is(period));
+        query.fields().include("userId").include("xp");
+        query.cursorBatchSize(2000);
+        try (Stream<XpBucket> buckets = mongoTemplate.stream(query, XpBucket.class)) {
+            buckets.forEach(b -> board.seed(b.getUserId(), b.getXp() != null ? b.getXp() : 0L, 0L));
+            syncedAt.put(w, started);
+            boards.put(w, new WindowBoard(period, board, true));
+        } catch (Exception e) {
+            System.err.println("[Ranking] Falha ao carregar ranking " + w + " " + period + ": " + e.getMessage());
+        }
+    }
+
+    private void syncSafely(boolean full) {
+        try {
+            sync(full);
+        } catch (Exception e) {
+            System.err.println("[Ranking] Erro inesperado na sincronização dos rankings semanal/mensal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Relê do Mongo os buckets do período corrente e aplica o XP atual (absoluto, então reler
+     * o mesmo bucket não soma nada). full = período inteiro; senão só os alterados desde a
+     * última leitura, com folga de CLOCK_SKEW_MS.
+     */
+    void sync(boolean full) {
+        for (XpWindow w : XpWindow.values()) {
+            WindowBoard current = boards.get(w);
+            if (!current.ready()) continue; // rollover() refaz a carga
+            long started = System.currentTimeMillis();
+            Criteria criteria = Criteria.where("window").is(w.name()).and("period").is(current.period());
+            if (!full) {
+                criteria = criteria.and("updatedAt").gte(new Date(syncedAt.getOrDefault(w, 0L) - CLOCK_SKEW_MS));
+            }
+            Query query = new Query(criteria);
+            query.fields().include("userId").include("xp");
+            query.cursorBatchSize(2000);
+            try (Stream<XpBucket> buckets = mongoTemplate.stream(query, XpBucket.class)) {
+                buckets.forEach(b -> {
+                    current.board().upsert(b.getUserId(), b.getXp() != null ? b.getXp() : 0L, 0L);
+                    refreshedBuckets.increment();
+                });
+                syncedAt.put(w, started);
+            } catch (Exception e) {
+                refreshFailures.increment();
+                System.err.println("[Ranking] Falha ao reler ranking " + w + " " + current.period() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "xpWindows";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        boards.forEach((w, wb) -> m.put(w.name().toLowerCase(),
+                Map.of("period", wb.period(), "ready", wb.ready(), "users", wb.board().size())));
+        m.put("refreshedBuckets", refreshedBuckets.sum());
+        m.put("refreshFailures", refreshFailures.sum());
+        return m;
+    }
+}
@@ -0,0 +1,35 @@
+package ai.startup.usuario.security;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Limites por rota (prefixo "ratelimit" no application.properties)
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ratelimit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+    private boolean trustForwardedFor = false;   // só ligar atrás de proxy/load balancer conhecido
+    private List<String> trustedProxies = new ArrayList<>(); // IPs ou CIDRs dos proxies (ex: 10.0.0.0/8)
+    private long idleEvictSeconds = 600;         // buckets sem uso há mais tempo que isso são descartados
+    private int maxBuckets = 200_000;            // cheio: chaves novas dividem um bucket de reserva por rota
+    private Map<String, Route> routes = new LinkedHashMap<>();
+
+    @Data
+    public static class Route {
+        private String method = "POST";
+        private String path;
+        private int ipCapacity;       // 0 = sem limite por IP
+        private int emailCapacity;    // 0 = sem limite por email
+        private long windowSeconds = 60;
+    }
+}
@@ -0,0 +1,250 @@
+package ai.startup.usuario.security;
+
+import ai.startup.usuario.metrics.MetricsSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rate limiter em memória (token bucket) por rota, aplicado no SecurityFilter antes de
+ * qualquer acesso a banco, BCrypt ou SendGrid.
+ *
+ * Cada chave (rota + IP ou rota + email) tem seu próprio bucket com lock próprio, então
+ * chaves diferentes nunca disputam o mesmo lock. Buckets ociosos são removidos periodicamente;
+ * com o mapa cheio (max-buckets), chaves novas caem num bucket de reserva compartilhado por
+ * rota em vez de varrer o mapa na thread da requisição.
+ */
+@Component
+public class RateLimiter implements MetricsSource {
+
+    private final RateLimitProperties props;
+    private final Map<String, RouteLimit> routesByPath = new HashMap<>();
+    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, TokenBucket> overflow = new ConcurrentHashMap<>(); // um por rota+tipo
+    private final List<Cidr> trustedProxies = new ArrayList<>();
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder limited = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+
+    public RateLimiter(RateLimitProperties props) {
+        this.props = props;
+        props.getRoutes().forEach((name, r) -> {
+            if (r.getPath() == null) {
+                throw new IllegalStateException("ratelimit.routes." + name + ".path não configurado.");
+            }
+            routesByPath.put(r.getMethod().toUpperCase() + " " + r.getPath(), new RouteLimit(name, r));
+        });
+        for (String p : props.getTrustedProxies()) {
+            if (p == null || p.isBlank()) continue;
+            Cidr c = Cidr.parse(p.trim());
+            if (c == null) {
+                throw new IllegalStateException("ratelimit.trusted-proxies: endereço inválido '" + p + "'");
+            }
+            trustedProxies.add(c);
+        }
+    }
+
+    public record RouteLimit(String name, RateLimitProperties.Route config) {}
+
+    /**
+     * Rota com limite configurado para (método, path), ou null
+     */
+    public RouteLimit routeFor(String method, String path) {
+        if (!props.isEnabled() || routesByPath.isEmpty()) return null;
+        return routesByPath.get(method + " " + path);
+    }
+
+    /**
+     * Consome um token por IP e outro por email (se houver). Retorna 0 se liberado,
+     * ou quantos segundos o cliente deve esperar (Retry-After).
+     */
+    public long check(RouteLimit route, String clientIp, String email) {
+        RateLimitProperties.Route cfg = route.config();
+        long windowNanos = TimeUnit.SECONDS.toNanos(cfg.getWindowSeconds());
+
+        long waitNanos = 0;
+        if (cfg.getIpCapacity() > 0 && clientIp != null) {
+            waitNanos = bucket(route.name() + "|ip", clientIp, cfg.getIpCapacity(), windowNanos).tryConsume();
+        }
+        if (waitNanos == 0 && cfg.getEmailCapacity() > 0 && email != null && !email.isBlank()) {
+            waitNanos = bucket(route.name() + "|email", email.trim().toLowerCase(), cfg.getEmailCapacity(), windowNanos).tryConsume();
+        }
+
+        if (waitNanos == 0) {
+            allowed.increment();
+            return 0;
+        }
+        limited.increment();
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    /**
+     * IP do cliente para o limite. Com trust-forwarded-for ligado e a conexão vinda de um
+     * proxy confiável, percorre o X-Forwarded-For da direita para a esquerda e usa o primeiro
+     * salto que não é proxy confiável (os da esquerda são controlados pelo cliente).
+     */
+    public String clientIp(String remoteAddr, String forwardedFor) {
+        if (!props.isTrustForwardedFor() || forwardedFor == null || forwardedFor.isBlank()
+                || !isTrustedProxy(remoteAddr)) {
+            return remoteAddr;
+        }
+        String[] hops = forwardedFor.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (!hop.isEmpty() && !isTrustedProxy(hop)) return hop;
+        }
+        return remoteAddr; // cadeia só de proxies
+    }
+
+    private boolean isTrustedProxy(String ip) {
+        if (ip == null || trustedProxies.isEmpty()) return false;
+        byte[] addr = Cidr.literal(ip);
+        if (addr == null) return false;
+        for (Cidr c : trustedProxies) {
+            if (c.contains(addr)) return true;
+        }
+        return false;
+    }
+
+    private TokenBucket bucket(String scope, String key, int capacity, long windowNanos) {
+        String fullKey = scope + "|" + key;
+        TokenBucket b = buckets.get(fullKey);
+        if (b != null) return b;
+        if (buckets.size() >= props.getMaxBuckets()) {
+            // mapa cheio: não aloca nem varre aqui; a limpeza fica com o evictIdle agendado
+            overflowed.increment();
+            return overflow.computeIfAbsent(scope, __ -> new TokenBucket(capacity, windowNanos));
+        }
+        return buckets.computeIfAbsent(fullKey, __ -> new TokenBucket(capacity, windowNanos));
+    }
+
+    /**
+     * Remove buckets sem uso há mais de ratelimit.idle-evict-seconds
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictIdle() {
+        long cutoff = System.nanoTime() - TimeUnit.SECONDS.toNanos(props.getIdleEvictSeconds());
+        buckets.entrySet().removeIf(e -> {
+            if (e.getValue().lastAccess() < cutoff) {
+                evicted.increment();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public String metricsName() {
+        return "rateLimiter";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("buckets", buckets.size());
+        m.put("allowed", allowed.sum());
+        m.put("limited", limited.sum());
+        m.put("evicted", evicted.sum());
+        m.put("overflowed", overflowed.sum());
+        return m;
+    }
+
+    /**
+     * Token bucket clássico: "capacity" tokens, reabastecido por completo a cada janela
+     */
+    static final class TokenBucket {
+        private final int capacity;
+        private final double nanosPerToken;
+        private double tokens;
+        private long lastRefill;
+        private volatile long lastAccess;
+
+        TokenBucket(int capacity, long windowNanos) {
+            this.capacity = capacity;
+            this.nanosPerToken = (double) windowNanos / capacity;
+            this.tokens = capacity;
+            this.lastRefill = System.nanoTime();
+            this.lastAccess = lastRefill;
+        }
+
+        /** 0 se consumiu um token; senão, nanos até o próximo token */
+        synchronized long tryConsume() {
+            long now = System.nanoTime();
+            lastAccess = now;
+            tokens = Math.min(capacity, tokens + (now - lastRefill) / nanosPerToken);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) * nanosPerToken);
+        }
+
+        long lastAccess() {
+            return lastAccess;
+        }
+    }
+
+    /**
+     * Faixa de IPs (a.b.c.d, a.b.c.d/n ou IPv6). Só aceita literais: nada de DNS.
+     */
+    record Cidr(byte[] network, int prefixBits) {
+
+        static Cidr parse(String value) {
+            int slash = value.indexOf('/');
+            byte[] addr = literal(slash < 0 ? value : value.substring(0, slash));
+            if (addr == null) return null;
+            int bits = addr.length * 8;
+            if (slash >= 0) {
+                try {
+                    bits = Integer.parseInt(value.substring(slash + 1));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                if (bits < 0 || bits > addr.length * 8) return null;
+            }
+            return new Cidr(addr, bits);
+        }
+
+        boolean contains(byte[] addr) {
+            if (addr.length != network.length) return false;
+            int full = prefixBits / 8;
+            for (int i = 0; i < full; i++) {
+                if (addr[i] != network[i]) return false;
+            }
+            int rest = prefixBits % 8;
+            if (rest == 0) return true;
+            int mask = 0xFF << (8 - rest);
+            return (addr[full] & mask) == (network[full] & mask);
+        }
+
+        /** Bytes do IP literal, ou null se não for um IPv4/IPv6 literal */
+        static byte[] literal(String ip) {
+            if (ip.isEmpty()) return null;
+            boolean v6 = ip.indexOf(':') >= 0;
+            for (int i = 0; i < ip.length(); i++) {
+                char ch = ip.charAt(i);
+                boolean ok = (ch >= '0' && ch <= '9') || ch == '.'
+                        || (v6 && (ch == ':' || (ch >= 'a' && ch <= 'f') || (ch >= 'A' && ch <= 'F')));
+                if (!ok) return null; // hostname: não resolve
+            }
+            try {
+                return InetAddress.getByName(ip).getAddress();
+            } catch (UnknownHostException e) {
+                return null;
+            }
+        }
+    }
+}
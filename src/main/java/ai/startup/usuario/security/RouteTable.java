@@ -0,0 +1,169 @@
+package ai.startup.usuario.security;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tabela de autorização de rotas compilada na inicialização.
+ *
+ * Suporta padrões exatos ("/auth/login") e de prefixo ("/users/**", mesma semântica do
+ * AntPathMatcher: casa "/users", "/users/" e qualquer subcaminho). Os exatos ficam num
+ * HashMap e os de prefixo numa trie por segmento; {@link #resolve} percorre o path uma
+ * vez, sem alocar, e devolve a decisão final.
+ */
+public final class RouteTable {
+
+    public enum Access { PUBLIC, AUTHENTICATED, ADMIN }
+
+    private static final int ANY_METHOD = -1;
+
+    private final Map<String, Rule> exact;
+    private final Node root;
+
+    private RouteTable(Map<String, Rule> exact, Node root) {
+        this.exact = exact;
+        this.root = root;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Decide o acesso para (método, path). Público tem precedência sobre ADMIN, como antes.
+     */
+    public Access resolve(String method, String path) {
+        int bit = methodBit(method);
+        boolean isPublic = false;
+        boolean admin = false;
+
+        Rule r = exact.get(path);
+        if (r != null) {
+            isPublic = r.isPublic;
+            admin = (r.adminMethods & bit) != 0;
+        }
+
+        // percorre a trie segmento a segmento aplicando as regras de prefixo encontradas
+        Node node = root;
+        int len = path.length();
+        int pos = (len > 0 && path.charAt(0) == '/') ? 1 : 0;
+        while (node != null && !isPublic) {
+            if (node.rule != null) {
+                isPublic = node.rule.isPublic;
+                admin |= (node.rule.adminMethods & bit) != 0;
+            }
+            if (pos > len) break;
+            int end = path.indexOf('/', pos);
+            if (end < 0) end = len;
+            node = node.child(path, pos, end - pos);
+            pos = end + 1;
+        }
+
+        if (isPublic) return Access.PUBLIC;
+        return admin ? Access.ADMIN : Access.AUTHENTICATED;
+    }
+
+    private static int methodBit(String method) {
+        if (method == null) return 0;
+        // HTTP é case-sensitive, mas a versão anterior comparava com equalsIgnoreCase
+        return switch (method.toUpperCase(Locale.ROOT)) {
+            case "GET" -> 1;
+            case "POST" -> 1 << 1;
+            case "PUT" -> 1 << 2;
+            case "DELETE" -> 1 << 3;
+            case "PATCH" -> 1 << 4;
+            case "HEAD" -> 1 << 5;
+            case "OPTIONS" -> 1 << 6;
+            default -> 1 << 7;
+        };
+    }
+
+    private static final class Rule {
+        boolean isPublic;
+        int adminMethods; // bitmask de métodos que exigem ADMIN
+    }
+
+    private static final class Node {
+        final String segment;
+        Node[] children = new Node[0];
+        Rule rule;
+
+        Node(String segment) {
+            this.segment = segment;
+        }
+
+        Node child(String path, int offset, int length) {
+            for (Node c : children) {
+                if (c.segment.length() == length && path.regionMatches(offset, c.segment, 0, length)) {
+                    return c;
+                }
+            }
+            return null;
+        }
+
+        Node childOrCreate(String segment) {
+            for (Node c : children) {
+                if (c.segment.equals(segment)) return c;
+            }
+            Node c = new Node(segment);
+            children = Arrays.copyOf(children, children.length + 1);
+            children[children.length - 1] = c;
+            return c;
+        }
+    }
+
+    public static final class Builder {
+        private final Map<String, Rule> exact = new HashMap<>();
+        private final Node root = new Node("");
+
+        /** Rota liberada (sem token) para qualquer método */
+        public Builder publicPath(String pattern) {
+            rule(pattern).isPublic = true;
+            return this;
+        }
+
+        /** Rota que exige ADMIN para o método informado */
+        public Builder admin(String method, String pattern) {
+            rule(pattern).adminMethods |= methodBit(method);
+            return this;
+        }
+
+        public RouteTable build() {
+            return new RouteTable(Map.copyOf(exact), root);
+        }
+
+        private Rule rule(String pattern) {
+            if (!pattern.startsWith("/")) {
+                throw new IllegalArgumentException("Padrão de rota deve começar com '/': " + pattern);
+            }
+            if (!pattern.endsWith("/**")) {
+                if (pattern.contains("*")) {
+                    throw new IllegalArgumentException("Curinga só é suportado no fim (/**): " + pattern);
+                }
+                return exact.computeIfAbsent(pattern, __ -> new Rule());
+            }
+            String prefix = pattern.substring(0, pattern.length() - 3);
+            if (prefix.contains("*")) {
+                throw new IllegalArgumentException("Curinga só é suportado no fim (/**): " + pattern);
+            }
+            Node node = root;
+            for (String seg : segments(prefix)) {
+                node = node.childOrCreate(seg);
+            }
+            if (node.rule == null) node.rule = new Rule();
+            return node.rule;
+        }
+
+        private static List<String> segments(String prefix) {
+            List<String> out = new ArrayList<>();
+            for (String s : prefix.split("/")) {
+                if (!s.isEmpty()) out.add(s);
+            }
+            return out;
+        }
+    }
+}
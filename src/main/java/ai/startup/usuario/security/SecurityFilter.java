@@ -1,42 +1,63 @@
 package ai.startup.usuario.security;
 
-import ai.startup.usuario.auth.JwtService;
-import io.jsonwebtoken.Claims;
+import ai.startup.usuario.auth.AuthClaims;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.springframework.util.AntPathMatcher;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.Set;
 
 public class SecurityFilter extends OncePerRequestFilter {
 
-    private final JwtService jwtService;
-    private final AntPathMatcher pathMatcher = new AntPathMatcher();
-
-    // rotas liberadas (sem token)
-    private static final Set<String> PUBLIC_PATHS = Set.of(
-        "/auth/login",
-        "/auth/register",          // <- registro público
-        "/auth/logout",            // <- logout público
-        "/auth/send-verification-code",   // <- verificação de email
-        "/auth/verify-email-code",        // <- verificação de email
-        "/auth/forgot-password",          // <- recuperação de senha
-        "/auth/reset-password",           // <- reset de senha
-        "/payments/webhook",               // <- webhook do Stripe
-        "/payments/success",               // <- confirmação de pagamento
-        "/v3/api-docs/**",
-        "/swagger-ui/**",
-        "/swagger-ui.html",
-        "/actuator/health"
-    );
-
-    public SecurityFilter(JwtService jwtService) {
-        this.jwtService = jwtService;
+    private static final int MAX_INSPECTED_BODY = 16 * 1024; // corpos de /auth/* são pequenos
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final VerifiedTokenCache tokenCache;
+    private final RateLimiter rateLimiter;
+
+    // regras de acesso compiladas uma vez (exatas em hash + prefixos em trie)
+    private final RouteTable routes;
+
+    static RouteTable routes(boolean stripeStub) {
+        RouteTable.Builder b = RouteTable.builder()
+            // rotas liberadas (sem token)
+            .publicPath("/auth/login")
+            .publicPath("/auth/register")          // <- registro público
+            .publicPath("/auth/logout")            // <- logout público
+            .publicPath("/auth/send-verification-code")   // <- verificação de email
+            .publicPath("/auth/verify-email-code")        // <- verificação de email
+            .publicPath("/auth/forgot-password")          // <- recuperação de senha
+            .publicPath("/auth/reset-password")           // <- reset de senha
+            .publicPath("/payments/webhook")               // <- webhook do Stripe
+            .publicPath("/payments/success")               // <- confirmação de pagamento
+            .publicPath("/internal/xp-events")             // <- serviço de questões (X-Internal-Token no controller)
+            .publicPath("/v3/api-docs/**")
+            .publicPath("/swagger-ui/**")
+            .publicPath("/swagger-ui.html")
+            .publicPath("/actuator/health")
+            // rotas que exigem ADMIN
+            .admin("DELETE", "/users/**")        // DELETE /users/** exige ADMIN
+            .admin("POST", "/users")             // POST /users (criação padrão) exige ADMIN
+            .admin("GET", "/admin/metrics")      // contadores internos
+            .admin("GET", "/admin/wins/**")      // auditoria do ledger de wins
+            .admin("POST", "/admin/recalculate-all-xp")
+            .admin("GET", "/admin/xp-jobs/**")   // status / cancelamento do recálculo de XP
+            .admin("POST", "/admin/xp-jobs/**");
+        if (stripeStub) {
+            b.publicPath("/stripe-stub/**");               // <- stand-in do Stripe, só com o profile stripe-stub
+        }
+        return b.build();
+    }
+
+    public SecurityFilter(VerifiedTokenCache tokenCache, RateLimiter rateLimiter, boolean stripeStub) {
+        this.tokenCache = tokenCache;
+        this.rateLimiter = rateLimiter;
+        this.routes = routes(stripeStub);
     }
 
     @Override
@@ -51,8 +72,32 @@ public class SecurityFilter extends OncePerRequestFilter {
             return;
         }
 
+        // --- rate limit (antes de qualquer acesso a banco/BCrypt/SendGrid) ---
+        RateLimiter.RouteLimit limit = rateLimiter.routeFor(request.getMethod(), request.getRequestURI());
+        if (limit != null) {
+            if (request.getContentLengthLong() > MAX_INSPECTED_BODY) {
+                response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Request body too large");
+                return;
+            }
+            // chunked não tem Content-Length: lê um byte a mais para detectar corpo acima do limite
+            byte[] body = request.getInputStream().readNBytes(MAX_INSPECTED_BODY + 1);
+            if (body.length > MAX_INSPECTED_BODY) {
+                response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Request body too large");
+                return;
+            }
+            CachedBodyRequest cached = new CachedBodyRequest(request, body);
+            long retryAfter = rateLimiter.check(limit, clientIp(request), extractEmail(cached.body()));
+            if (retryAfter > 0) {
+                response.setHeader("Retry-After", String.valueOf(retryAfter));
+                response.sendError(429, "Too many requests");
+                return;
+            }
+            request = cached;
+        }
+
         // --- público? ---
-        if (isPublic(request)) {
+        RouteTable.Access access = routes.resolve(request.getMethod(), request.getRequestURI());
+        if (access == RouteTable.Access.PUBLIC) {
             chain.doFilter(request, response);
             return;
         }
@@ -64,24 +109,29 @@ public class SecurityFilter extends OncePerRequestFilter {
             return;
         }
 
-        Claims claims;
+        AuthClaims claims;
         try {
-            claims = jwtService.validar(token);
+            claims = tokenCache.validar(token); // hit no cache = sem HMAC/parse
         } catch (Exception e) {
             response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Invalid or expired token");
             return;
         }
 
-        String email = claims.get("email", String.class);
-        String permissao = claims.get("permissao", String.class);
-        if (permissao == null) permissao = "USER";
+        String email = claims.email();
+        String permissao = claims.permissao();
 
         // deixa disponível para controller/service
         request.setAttribute("authEmail", email);
         request.setAttribute("authPermissao", permissao);
+        if (claims.userId() != null) {
+            // premium/versão do token: revalidados pelo EntitlementCache nas rotas premium
+            request.setAttribute("authUserId", claims.userId());
+            request.setAttribute("authPremium", claims.premium());
+            request.setAttribute("authEntitlementVersion", claims.entitlementVersion());
+        }
 
         // --- autorização simples ---
-        if (requiresAdmin(request) && !"ADMIN".equalsIgnoreCase(permissao)) {
+        if (access == RouteTable.Access.ADMIN && !"ADMIN".equalsIgnoreCase(permissao)) {
             response.sendError(HttpServletResponse.SC_FORBIDDEN, "Admin permission required");
             return;
         }
@@ -115,26 +165,24 @@ public class SecurityFilter extends OncePerRequestFilter {
         return null;
     }
 
-    private boolean isPublic(HttpServletRequest req) {
-        String path = req.getRequestURI();
-        for (String p : PUBLIC_PATHS) {
-            if (pathMatcher.match(p, path)) return true;
-        }
-        return false;
+    /**
+     * IP do cliente: salto mais à direita do X-Forwarded-For que não é proxy confiável, senão o remoto
+     */
+    private String clientIp(HttpServletRequest request) {
+        return rateLimiter.clientIp(request.getRemoteAddr(), request.getHeader("X-Forwarded-For"));
     }
 
-    // regra: DELETE /users/** requer ADMIN
-    private boolean requiresAdmin(HttpServletRequest req) {
-        String path = req.getRequestURI();
-        String method = req.getMethod();
-
-        // DELETE /users/** exige ADMIN
-        if ("DELETE".equalsIgnoreCase(method) && pathMatcher.match("/users/**", path)) return true;
-
-        // POST /users (criação padrão) exige ADMIN
-        if ("POST".equalsIgnoreCase(method) && pathMatcher.match("/users", path)) return true;
-
-        return false;
+    /**
+     * Campo "email" do corpo JSON, se houver (corpo inválido = só limite por IP)
+     */
+    private static String extractEmail(byte[] body) {
+        if (body.length == 0) return null;
+        try {
+            JsonNode email = JSON.readTree(body).get("email");
+            return email != null && email.isTextual() ? email.asText() : null;
+        } catch (IOException e) {
+            return null;
+        }
     }
 
     private void addCors(HttpServletResponse res) {
@@ -144,7 +192,7 @@ public class SecurityFilter extends OncePerRequestFilter {
         res.setHeader("Access-Control-Allow-Credentials", "true"); // Permite cookies
         res.setHeader("Access-Control-Allow-Methods", "GET,POST,PUT,DELETE,OPTIONS");
         res.setHeader("Access-Control-Allow-Headers", "Authorization,Content-Type");
-        res.setHeader("Access-Control-Expose-Headers", "Authorization");
+        res.setHeader("Access-Control-Expose-Headers", "Authorization,X-Next-Cursor");
         res.setHeader("Access-Control-Max-Age", "3600");
     }
 }
@@ -0,0 +1,119 @@
+package ai.startup.usuario.security;
+
+import ai.startup.usuario.auth.AuthClaims;
+import ai.startup.usuario.auth.JwtService;
+import ai.startup.usuario.metrics.MetricsSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache de JWTs já validados.
+ *
+ * O SPA manda o mesmo token (6h) centenas de vezes; aqui guardamos os claims
+ * extraídos indexados pelo SHA-256 do token, válidos até o "exp" do próprio token.
+ * Um hit custa um hash + lookup, sem HMAC nem parse de JSON.
+ */
+@Component
+public class VerifiedTokenCache implements MetricsSource {
+
+    private final JwtService jwtService;
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, AuthClaims> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // MessageDigest não é thread-safe: um por thread
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    public VerifiedTokenCache(JwtService jwtService,
+                              @Value("${security.jwt-cache.max-entries:10000}") int maxEntries) {
+        this.jwtService = jwtService;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Retorna os claims do token (do cache ou validando). Lança exceção se o token for inválido/expirado.
+     */
+    public AuthClaims validar(String token) {
+        String key = digest(token);
+        Instant now = Instant.now();
+
+        AuthClaims cached = entries.get(key);
+        if (cached != null) {
+            if (cached.expiresAt().isAfter(now)) {
+                hits.increment();
+                return cached;
+            }
+            // expirou: remove e deixa o parser lançar ExpiredJwtException
+            if (entries.remove(key, cached)) evictions.increment();
+        }
+
+        misses.increment();
+        AuthClaims claims = jwtService.extrair(token);
+        if (claims.expiresAt() != null && claims.expiresAt().isAfter(now)) {
+            if (entries.size() >= maxEntries) evict(now);
+            entries.put(key, claims);
+        }
+        return claims;
+    }
+
+    @Override
+    public String metricsName() {
+        return "jwtCache";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("size", entries.size());
+        m.put("maxEntries", maxEntries);
+        m.put("hits", hits.sum());
+        m.put("misses", misses.sum());
+        m.put("evictions", evictions.sum());
+        return m;
+    }
+
+    /**
+     * Remove os expirados; se ainda estiver cheio, descarta entradas arbitrárias até ~90% da capacidade
+     */
+    private void evict(Instant now) {
+        Iterator<AuthClaims> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (!it.next().expiresAt().isAfter(now)) {
+                it.remove();
+                evictions.increment();
+            }
+        }
+        int target = maxEntries - Math.max(1, maxEntries / 10);
+        it = entries.values().iterator();
+        while (entries.size() > target && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    private static String digest(String token) {
+        byte[] hash = SHA256.get().digest(token.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getEncoder().encodeToString(hash);
+    }
+}
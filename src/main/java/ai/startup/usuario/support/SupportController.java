@@ -1,6 +1,6 @@
 package ai.startup.usuario.support;
 
-import ai.startup.usuario.usuario.UsuarioService;
+import ai.startup.usuario.auth.CurrentUser;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import jakarta.servlet.http.HttpServletRequest;
@@ -18,7 +18,7 @@ public class SupportController {
     private SupportService supportService;
     
     @Autowired
-    private UsuarioService usuarioService;
+    private CurrentUser currentUser;
     
     /**
      * POST /support/messages - Cria uma nova mensagem de suporte (requer autenticação)
@@ -38,17 +38,14 @@ public class SupportController {
             return ResponseEntity.status(401).build();
         }
         
-        // Busca dados do usuário pelo email
-        var usuarioDTO = usuarioService.obterPorEmail(email);
-        if (usuarioDTO == null) {
-            return ResponseEntity.status(404).build();
-        }
+        // Dados do usuário autenticado (uma leitura projetada por request)
+        var usuario = currentUser.get();
         
         // Cria DTO com dados do usuário autenticado
         SupportMessageCreateDTO dto = new SupportMessageCreateDTO(
-                usuarioDTO.id(),
-                usuarioDTO.email(),
-                usuarioDTO.nome() + (usuarioDTO.sobrenome() != null ? " " + usuarioDTO.sobrenome() : ""),
+                usuario.getId(),
+                usuario.getEmail(),
+                usuario.getNome() + (usuario.getSobrenome() != null ? " " + usuario.getSobrenome() : ""),
                 request.get("message")
         );
         
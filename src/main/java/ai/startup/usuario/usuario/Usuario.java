@@ -4,6 +4,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDate;
@@ -13,6 +15,11 @@ import java.util.List;
 @NoArgsConstructor          // construtor vazio
 @AllArgsConstructor         // construtor com todos os args
 @Document("usuarios")
+@CompoundIndexes({
+    // paginação keyset dos rankings (ver RankingService)
+    @CompoundIndex(name = "ranking_xp", def = "{'xp': -1, 'streaks': -1, '_id': 1}"),
+    @CompoundIndex(name = "ranking_streak", def = "{'streaks': -1, 'xp': -1, '_id': 1}")
+})
 public class Usuario {
     @Id
     private String id;
@@ -30,6 +37,9 @@ public class Usuario {
     private String permissao;   // USER | ADMIN
     private LocalDate ultimoLogin; // Data do último login para cálculo de streak
     private Boolean isPremium;  // true se usuário tem acesso premium
+    private Long entitlementVersion; // incrementado a cada mudança de isPremium (detecta JWT desatualizado)
+    private Long premiumEventAt;          // created (epoch s) do último evento de assinatura aplicado
+    private String premiumSubscriptionId; // assinatura do Stripe que concedeu o premium atual
     private Boolean extendedTime; // true se usuário tem direito a tempo estendido (53 min ao invés de 35 min)
     private String selectedPractice; // prática selecionada pelo usuário (ex: "SAT_MATH", null se ainda não selecionou) - DEPRECATED: use selectedPractices
     private List<String> selectedPractices; // lista de práticas ativas do usuário (ex: ["sat-math", "sat-reading"])
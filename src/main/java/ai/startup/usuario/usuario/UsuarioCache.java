@@ -0,0 +1,246 @@
+package ai.startup.usuario.usuario;
+
+import ai.startup.usuario.cache.CacheRegion;
+import ai.startup.usuario.cache.InvalidationBus;
+import ai.startup.usuario.metrics.MetricsSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache read-through de Usuario, endereçável por id e por email normalizado.
+ *
+ * LRU limitado por max-entries e com TTL. Toda escrita local chama put() com o documento
+ * devolvido pelo Mongo ou invalidate(); ambos avisam as outras instâncias pelo InvalidationBus
+ * (o TTL fica só como rede de segurança caso uma mensagem se perca).
+ * Entrega sempre cópias: quem recebe pode alterar o objeto sem sujar o cache.
+ *
+ * Só para leituras: fluxos read-modify-write (ex: atualizar) continuam lendo do Mongo,
+ * senão um save() de uma cópia antiga desfaria $inc feitos no meio tempo.
+ */
+@Component
+public class UsuarioCache implements MetricsSource {
+
+    private record Entry(Usuario user, long expiresAt) {}
+
+    private final UsuarioRepository repo;
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    // acessos sob o lock do próprio cache (LinkedHashMap em access-order não é thread-safe)
+    private final LinkedHashMap<String, Entry> byId = new LinkedHashMap<>(256, 0.75f, true);
+    private final HashMap<String, String> idByEmail = new HashMap<>();
+
+    // loads em andamento (token por chave): uma escrita na chave descarta o token e o load
+    // que a atravessou não é cacheado. Load por email ainda não sabe o id, então qualquer
+    // escrita descarta os tokens por email (são poucos e de vida curta)
+    private final HashMap<String, Object> loadingById = new HashMap<>();
+    private final HashMap<String, Object> loadingByEmail = new HashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder staleLoads = new LongAdder();
+
+    private final InvalidationBus bus;
+
+    public UsuarioCache(UsuarioRepository repo,
+                        InvalidationBus bus,
+                        @Value("${usuario.cache.max-entries:10000}") int maxEntries,
+                        @Value("${usuario.cache.ttl-seconds:30}") long ttlSeconds) {
+        this.repo = repo;
+        this.bus = bus;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        // escritas feitas em outras instâncias
+        bus.subscribe(CacheRegion.USUARIO, ids -> ids.forEach(this::evictLocal), this::clearLocal);
+    }
+
+    public Optional<Usuario> findById(String id) {
+        if (id == null) return Optional.empty();
+        Usuario cached = lookup(id);
+        if (cached != null) return Optional.of(cached);
+
+        Object token = beginLoad(loadingById, id);
+        Usuario loaded = null;
+        try {
+            loaded = repo.findById(id).orElse(null);
+        } finally {
+            finishLoad(loadingById, id, token, loaded);
+        }
+        return Optional.ofNullable(loaded).map(UsuarioCache::copy);
+    }
+
+    public Optional<Usuario> findByEmail(String email) {
+        if (email == null) return Optional.empty();
+        String normalized = email.toLowerCase();
+        String id;
+        synchronized (this) {
+            id = idByEmail.get(normalized);
+        }
+        if (id != null) {
+            Usuario cached = lookup(id);
+            if (cached != null && normalized.equals(cached.getEmail())) return Optional.of(cached);
+        }
+
+        Object token = beginLoad(loadingByEmail, normalized);
+        Usuario loaded = null;
+        try {
+            loaded = repo.findByEmail(normalized).orElse(null);
+        } finally {
+            finishLoad(loadingByEmail, normalized, token, loaded);
+        }
+        return Optional.ofNullable(loaded).map(UsuarioCache::copy);
+    }
+
+    /**
+     * Documento completo recém-escrito (retorno de save/findAndModify); avisa as outras instâncias
+     */
+    public void put(Usuario u) {
+        if (u == null || u.getId() == null) return;
+        synchronized (this) {
+            cancelLoads(u.getId());
+            insert(copy(u));
+        }
+        bus.publish(CacheRegion.USUARIO, u.getId());
+    }
+
+    public void invalidate(String id) {
+        if (id == null) return;
+        evictLocal(id);
+        bus.publish(CacheRegion.USUARIO, id);
+    }
+
+    private void evictLocal(String id) {
+        synchronized (this) {
+            cancelLoads(id);
+            Entry e = byId.remove(id);
+            if (e != null) {
+                idByEmail.remove(e.user().getEmail());
+                invalidations.increment();
+            }
+        }
+    }
+
+    /** Mensagens do barramento podem ter se perdido: descarta tudo (e os loads em andamento) */
+    private synchronized void clearLocal() {
+        invalidations.add(byId.size());
+        byId.clear();
+        idByEmail.clear();
+        loadingById.clear();
+        loadingByEmail.clear();
+    }
+
+    private Usuario lookup(String id) {
+        synchronized (this) {
+            Entry e = byId.get(id);
+            if (e != null) {
+                if (System.nanoTime() - e.expiresAt() < 0) {
+                    hits.increment();
+                    return copy(e.user());
+                }
+                byId.remove(id);
+                idByEmail.remove(e.user().getEmail());
+                expirations.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    private synchronized Object beginLoad(HashMap<String, Object> loading, String key) {
+        Object token = new Object();
+        loading.put(key, token); // load concorrente da mesma chave: só o último é cacheado
+        return token;
+    }
+
+    private void finishLoad(HashMap<String, Object> loading, String key, Object token, Usuario loaded) {
+        synchronized (this) {
+            if (!loading.remove(key, token)) {
+                if (loaded != null) staleLoads.increment(); // pode ser mais velho que o que foi escrito
+                return;
+            }
+            if (loaded != null) insert(copy(loaded));
+        }
+    }
+
+    // chamado com o lock
+    private void cancelLoads(String id) {
+        loadingById.remove(id);
+        loadingByEmail.clear();
+    }
+
+    // chamado com o lock
+    private void insert(Usuario u) {
+        Entry old = byId.put(u.getId(), new Entry(u, System.nanoTime() + ttlNanos));
+        if (old != null && old.user().getEmail() != null && !old.user().getEmail().equals(u.getEmail())) {
+            idByEmail.remove(old.user().getEmail()); // email mudou
+        }
+        if (u.getEmail() != null) idByEmail.put(u.getEmail(), u.getId());
+
+        Iterator<Map.Entry<String, Entry>> it = byId.entrySet().iterator();
+        while (byId.size() > maxEntries && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            idByEmail.remove(eldest.user().getEmail());
+            evictions.increment();
+        }
+    }
+
+    static Usuario copy(Usuario u) {
+        Usuario c = new Usuario();
+        c.setId(u.getId());
+        c.setNome(u.getNome());
+        c.setSobrenome(u.getSobrenome());
+        c.setCpf(u.getCpf());
+        c.setTelefone(u.getTelefone());
+        c.setNascimento(u.getNascimento());
+        c.setEmail(u.getEmail());
+        c.setLanguage(u.getLanguage());
+        c.setSenhaHash(u.getSenhaHash());
+        c.setWins(u.getWins());
+        c.setStreaks(u.getStreaks());
+        c.setXp(u.getXp());
+        c.setPermissao(u.getPermissao());
+        c.setUltimoLogin(u.getUltimoLogin());
+        c.setIsPremium(u.getIsPremium());
+        c.setEntitlementVersion(u.getEntitlementVersion());
+        c.setExtendedTime(u.getExtendedTime());
+        c.setSelectedPractice(u.getSelectedPractice());
+        c.setSelectedPractices(u.getSelectedPractices() == null ? null : new ArrayList<>(u.getSelectedPractices()));
+        return c;
+    }
+
+    @Override
+    public String metricsName() {
+        return "usuarioCache";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        long h = hits.sum();
+        long m = misses.sum();
+        Map<String, Object> s = new LinkedHashMap<>();
+        synchronized (this) {
+            s.put("size", byId.size());
+        }
+        s.put("maxEntries", maxEntries);
+        s.put("hits", h);
+        s.put("misses", m);
+        s.put("hitRatio", h + m == 0 ? 0.0 : (double) h / (h + m));
+        s.put("evictions", evictions.sum());
+        s.put("expirations", expirations.sum());
+        s.put("invalidations", invalidations.sum());
+        s.put("staleLoads", staleLoads.sum());
+        return s;
+    }
+}
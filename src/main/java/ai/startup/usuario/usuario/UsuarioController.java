@@ -2,26 +2,44 @@ package ai.startup.usuario.usuario;
 
 import ai.startup.usuario.auth.AuthRequestDTO;
 import ai.startup.usuario.auth.AuthResponseDTO;
+import ai.startup.usuario.auth.CurrentUser;
+import ai.startup.usuario.auth.EntitlementCache;
+import ai.startup.usuario.ranking.MyRankDTO;
+import ai.startup.usuario.ranking.RankingEntryDTO;
+import ai.startup.usuario.ranking.RankingPageDTO;
+import ai.startup.usuario.ranking.RankingMetric;
+import ai.startup.usuario.ranking.RankingService;
+import ai.startup.usuario.ranking.XpWindow;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 
 import java.util.List;
-import java.util.Map;
 
 @RestController
 @RequestMapping
 public class UsuarioController {
 
     private final UsuarioService service;
+    private final RankingService rankingService;
+    private final EntitlementCache entitlements;
+    private final CurrentUser currentUser;
 
-    public UsuarioController(UsuarioService service) {
+    public UsuarioController(UsuarioService service,
+                             RankingService rankingService,
+                             EntitlementCache entitlements,
+                             CurrentUser currentUser) {
         this.service = service;
+        this.rankingService = rankingService;
+        this.entitlements = entitlements;
+        this.currentUser = currentUser;
     }
 
     // AUTH
@@ -77,15 +95,8 @@ public class UsuarioController {
             return ResponseEntity.status(401).build();
         }
         
-        // Atualiza streak ao buscar /users/me
-        UsuarioDTO user = service.obterPorEmail(email);
-        if (user != null && user.id() != null) {
-            service.updateStreakOnLogin(user.id());
-            // Recarrega para pegar o streak atualizado
-            user = service.obterPorEmail(email);
-        }
-        
-        return ResponseEntity.ok(user);
+        // Atualiza streak ao buscar /users/me (findAndModify único, ou só leitura se já foi hoje)
+        return ResponseEntity.ok(service.obterPorEmailAtualizandoStreak(email));
     }
 
     // CRUD
@@ -134,7 +145,11 @@ public class UsuarioController {
         if (email == null || email.isBlank()) {
             return ResponseEntity.status(401).build();
         }
-        return ResponseEntity.ok(service.upgradeToPremium(email));
+        // premium atual pelo EntitlementCache: o caso "já é premium" não chega ao Mongo
+        if (entitlements.resolve(req).premium()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Usuário já é premium");
+        }
+        return ResponseEntity.ok(service.upgradeToPremium(currentUser.id()));
     }
 
     // ===== PERFIL PÚBLICO E RANKING =====
@@ -149,25 +164,90 @@ public class UsuarioController {
     }
 
     /**
-     * GET /ranking/xp - Ranking de usuários por XP
+     * GET /ranking/{metric}?limit=&cursor=&practice=&window= - Ranking por XP ou Streak (paginado)
+     * metric: xp | streak; practice (opcional): ranking só da prática (ex: sat-math)
+     * window (opcional, só xp): week | month = XP ganho na semana/mês corrente
+     * Próxima página: header X-Next-Cursor (ausente na última página)
      */
     @SecurityRequirement(name = "bearerAuth")
-    @GetMapping("/ranking/xp")
-    public ResponseEntity<List<UsuarioDTO>> getRankingByXp(
-        @RequestParam(defaultValue = "50") int limit
+    @GetMapping("/ranking/{metric}")
+    public ResponseEntity<List<RankingEntryDTO>> getRanking(
+        @PathVariable String metric,
+        @RequestParam(defaultValue = "50") int limit,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(required = false) String practice,
+        @RequestParam(required = false) String window
     ) {
-        return ResponseEntity.ok(service.getRankingByXp(limit));
+        RankingMetric m = RankingMetric.fromPath(metric);
+        XpWindow w = windowParam(m, practice, window);
+        RankingPageDTO page = w != null
+            ? rankingService.windowPage(w, limit, cursor)
+            : rankingService.page(m, practice, limit, cursor);
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok();
+        if (page.nextCursor() != null) ok.header("X-Next-Cursor", page.nextCursor());
+        return ok.body(page.items());
     }
 
     /**
-     * GET /ranking/streak - Ranking de usuários por Streak
+     * GET /ranking/{metric}/me?k=&practice= - Posição do usuário logado no ranking (+ k vizinhos)
      */
     @SecurityRequirement(name = "bearerAuth")
-    @GetMapping("/ranking/streak")
-    public ResponseEntity<List<UsuarioDTO>> getRankingByStreak(
-        @RequestParam(defaultValue = "50") int limit
+    @GetMapping("/ranking/{metric}/me")
+    public ResponseEntity<MyRankDTO> getMyRank(
+        @PathVariable String metric,
+        @RequestParam(defaultValue = "5") int k,
+        @RequestParam(required = false) String practice,
+        @RequestParam(required = false) String window,
+        HttpServletRequest req
     ) {
-        return ResponseEntity.ok(service.getRankingByStreak(limit));
+        String email = (String) req.getAttribute("authEmail");
+        if (email == null || email.isBlank()) {
+            return ResponseEntity.status(401).build();
+        }
+        RankingMetric m = RankingMetric.fromPath(metric);
+        XpWindow w = windowParam(m, practice, window);
+        String userId = currentUser.id();
+        return ResponseEntity.ok(w != null
+            ? rankingService.myWindowRank(w, userId, k)
+            : rankingService.myRank(m, practice, userId, k));
+    }
+
+    private XpWindow windowParam(RankingMetric metric, String practice, String window) {
+        XpWindow w = XpWindow.fromParam(window);
+        if (w != null && (metric != RankingMetric.XP || (practice != null && !practice.isBlank()))) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "window só é suportado no ranking global de xp");
+        }
+        return w;
+    }
+
+    /**
+     * GET /users/me/entitlements - Premium efetivo (sem ler o usuário inteiro).
+     * tokenStale=true indica que o JWT foi emitido antes da última mudança de premium.
+     */
+    @SecurityRequirement(name = "bearerAuth")
+    @GetMapping("/users/me/entitlements")
+    public ResponseEntity<EntitlementCache.Resolved> myEntitlements(HttpServletRequest req) {
+        String email = (String) req.getAttribute("authEmail");
+        if (email == null || email.isBlank()) {
+            return ResponseEntity.status(401).build();
+        }
+        return ResponseEntity.ok(entitlements.resolve(req));
+    }
+
+    /**
+     * POST /users/me/spend-wins?amount= - Debita wins se houver saldo (atômico)
+     */
+    @SecurityRequirement(name = "bearerAuth")
+    @PostMapping("/users/me/spend-wins")
+    public ResponseEntity<UsuarioDTO> spendWins(
+        @RequestParam long amount,
+        HttpServletRequest req
+    ) {
+        String email = (String) req.getAttribute("authEmail");
+        if (email == null || email.isBlank()) {
+            return ResponseEntity.status(401).build();
+        }
+        return ResponseEntity.ok(service.spendWins(currentUser.id(), amount));
     }
 
     /**
@@ -202,24 +282,6 @@ public class UsuarioController {
         return ResponseEntity.ok(service.recalculateXp(id, bearerToken));
     }
 
-    /**
-     * POST /admin/recalculate-all-xp - Recalcula XP de todos os usuários (administrativo)
-     */
-    @SecurityRequirement(name = "bearerAuth")
-    @PostMapping("/admin/recalculate-all-xp")
-    public ResponseEntity<Map<String, Object>> recalculateAllXp(HttpServletRequest req) {
-        String bearerToken = extractBearerToken(req);
-        if (bearerToken == null) {
-            return ResponseEntity.status(401).build();
-        }
-        
-        int updated = service.recalculateAllXp(bearerToken);
-        return ResponseEntity.ok(java.util.Map.of(
-            "message", "XP recalculado para " + updated + " usuários",
-            "updated_count", updated
-        ));
-    }
-
     /**
      * Extrai o token Bearer do header Authorization
      */
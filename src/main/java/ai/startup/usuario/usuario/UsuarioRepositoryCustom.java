@@ -0,0 +1,52 @@
+package ai.startup.usuario.usuario;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Operações atômicas em usuarios que não cabem em query derivada do Spring Data
+ */
+public interface UsuarioRepositoryCustom {
+
+    /**
+     * Aplica a regra de streak do login (mesmo dia = mantém, dia seguinte = +1, senão = 1)
+     * num único findAndModify e devolve o documento já atualizado.
+     */
+    Optional<Usuario> touchLoginStreakByEmail(String email, LocalDate today);
+
+    Optional<Usuario> touchLoginStreakById(String id, LocalDate today);
+
+    // ===== WINS (todas em um único findAndModify, devolvendo o documento atualizado) =====
+
+    /** wins += amount */
+    Optional<Usuario> incrementWins(String id, long amount);
+
+    /** wins -= cost somente se wins >= cost; vazio se não existe ou saldo insuficiente */
+    Optional<Usuario> decrementWinsIfEnough(String id, long cost);
+
+    /** wins -= cost e isPremium = true (nova entitlementVersion), somente se wins >= cost e ainda não for premium */
+    Optional<Usuario> purchasePremium(String id, long cost);
+
+    /** wins = value; devolve o documento ANTERIOR (para saber o saldo antigo) */
+    Optional<Usuario> replaceWins(String id, long value);
+
+    /**
+     * isPremium = premium a partir de um evento de assinatura, somente se o evento for mais novo que o
+     * último aplicado (premiumEventAt; empate favorece o cancelamento). Cancelamento com subscriptionId
+     * só vale para a assinatura atual. entitlementVersion só avança se o valor mudou.
+     * Devolve o documento corrente (aplicado ou não).
+     */
+    Optional<Usuario> updatePremium(String id, boolean premium, long eventCreated, String subscriptionId);
+
+    // ===== $set pontual (nunca regrava o documento inteiro) =====
+
+    /** $set só dos campos informados; devolve o documento ANTERIOR (vazio se não existe) */
+    Optional<Usuario> setFields(String id, Map<String, Object> fields);
+
+    /** senhaHash = newHash somente se ainda for expectedHash; devolve o documento atualizado */
+    Optional<Usuario> replacePasswordHash(String id, String expectedHash, String newHash);
+
+    /** xp = newXp somente se xp ainda for expectedXp (ausente conta como 0); devolve o documento atualizado */
+    Optional<Usuario> setXpIfUnchanged(String id, long expectedXp, long newXp);
+}
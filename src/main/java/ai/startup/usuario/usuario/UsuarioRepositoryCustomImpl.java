@@ -0,0 +1,155 @@
+package ai.startup.usuario.usuario;
+
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+class UsuarioRepositoryCustomImpl implements UsuarioRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    UsuarioRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Optional<Usuario> touchLoginStreakByEmail(String email, LocalDate today) {
+        return touchLoginStreak(new Document("email", email), today);
+    }
+
+    @Override
+    public Optional<Usuario> touchLoginStreakById(String id, LocalDate today) {
+        return touchLoginStreak(new Document("_id", toObjectId(id)), today);
+    }
+
+    @Override
+    public Optional<Usuario> incrementWins(String id, long amount) {
+        Query query = new Query(Criteria.where("_id").is(id));
+        return modify(query, new Update().inc("wins", amount), true);
+    }
+
+    @Override
+    public Optional<Usuario> decrementWinsIfEnough(String id, long cost) {
+        Query query = new Query(Criteria.where("_id").is(id).and("wins").gte(cost));
+        return modify(query, new Update().inc("wins", -cost), true);
+    }
+
+    @Override
+    public Optional<Usuario> purchasePremium(String id, long cost) {
+        Query query = new Query(Criteria.where("_id").is(id).and("wins").gte(cost).and("isPremium").ne(true));
+        return modify(query, new Update().inc("wins", -cost).set("isPremium", true).inc("entitlementVersion", 1), true);
+    }
+
+    @Override
+    public Optional<Usuario> replaceWins(String id, long value) {
+        Query query = new Query(Criteria.where("_id").is(id));
+        return modify(query, new Update().set("wins", value), false);
+    }
+
+    @Override
+    public Optional<Usuario> updatePremium(String id, boolean premium, long eventCreated, String subscriptionId) {
+        List<Criteria> applies = new ArrayList<>();
+        applies.add(Criteria.where("_id").is(id));
+        applies.add(new Criteria().orOperator(
+                Criteria.where("premiumEventAt").exists(false),
+                premium ? Criteria.where("premiumEventAt").lt(eventCreated)
+                        : Criteria.where("premiumEventAt").lte(eventCreated)));
+        if (!premium && subscriptionId != null) {
+            // cancelamento de uma assinatura antiga não derruba a atual
+            applies.add(new Criteria().orOperator(
+                    Criteria.where("premiumSubscriptionId").exists(false),
+                    Criteria.where("premiumSubscriptionId").is(subscriptionId)));
+        }
+
+        Update update = new Update().set("premiumEventAt", eventCreated);
+        if (premium && subscriptionId != null) update.set("premiumSubscriptionId", subscriptionId);
+
+        List<Criteria> changing = new ArrayList<>(applies);
+        changing.add(Criteria.where("isPremium").ne(premium));
+        Optional<Usuario> changed = modify(new Query(new Criteria().andOperator(changing)),
+                update.set("isPremium", premium).inc("entitlementVersion", 1), true);
+        if (changed.isPresent()) return changed;
+
+        // já estava no estado pedido (ex: renovação): só registra o evento, versão preservada.
+        // Evento fora de ordem: nada muda
+        Update touch = new Update().set("premiumEventAt", eventCreated);
+        if (premium && subscriptionId != null) touch.set("premiumSubscriptionId", subscriptionId);
+        mongoTemplate.updateFirst(new Query(new Criteria().andOperator(applies)), touch, Usuario.class);
+        return Optional.ofNullable(mongoTemplate.findById(id, Usuario.class));
+    }
+
+    @Override
+    public Optional<Usuario> setFields(String id, Map<String, Object> fields) {
+        Query query = new Query(Criteria.where("_id").is(id));
+        if (fields.isEmpty()) {
+            return Optional.ofNullable(mongoTemplate.findOne(query, Usuario.class));
+        }
+        Update update = new Update();
+        fields.forEach(update::set);
+        return modify(query, update, false);
+    }
+
+    @Override
+    public Optional<Usuario> replacePasswordHash(String id, String expectedHash, String newHash) {
+        Query query = new Query(Criteria.where("_id").is(id).and("senhaHash").is(expectedHash));
+        return modify(query, new Update().set("senhaHash", newHash), true);
+    }
+
+    @Override
+    public Optional<Usuario> setXpIfUnchanged(String id, long expectedXp, long newXp) {
+        Criteria current = expectedXp == 0
+                ? Criteria.where("xp").in(0L, null)   // null também casa campo ausente
+                : Criteria.where("xp").is(expectedXp);
+        Query query = new Query(Criteria.where("_id").is(id).andOperator(current));
+        return modify(query, new Update().set("xp", newXp), true);
+    }
+
+    private Optional<Usuario> modify(Query query, Update update, boolean returnNew) {
+        return Optional.ofNullable(mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(returnNew), Usuario.class));
+    }
+
+    private Optional<Usuario> touchLoginStreak(Document filter, LocalDate today) {
+        Date todayDate = toDate(today);
+        Date yesterdayDate = toDate(today.minusDays(1));
+        Document currentStreak = new Document("$ifNull", List.of("$streaks", 0L));
+
+        // no $set de pipeline as expressões enxergam o documento ANTES da atualização
+        Document streaks = new Document("$switch", new Document("branches", List.of(
+                new Document("case", new Document("$eq", List.of("$ultimoLogin", todayDate)))
+                        .append("then", currentStreak),                                             // mesmo dia
+                new Document("case", new Document("$eq", List.of("$ultimoLogin", yesterdayDate)))
+                        .append("then", new Document("$add", List.of(currentStreak, 1L)))           // consecutivo
+        )).append("default", 1L));                                                                  // primeiro login / quebrou
+
+        List<Document> pipeline = List.of(new Document("$set",
+                new Document("streaks", streaks).append("ultimoLogin", todayDate)));
+
+        Document updated = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Usuario.class))
+                .findOneAndUpdate(filter, pipeline, new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+        return Optional.ofNullable(updated).map(d -> mongoTemplate.getConverter().read(Usuario.class, d));
+    }
+
+    /** Mesma conversão que o Spring Data usa ao gravar LocalDate (início do dia no fuso do servidor) */
+    private static Date toDate(LocalDate date) {
+        return Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    private static Object toObjectId(String id) {
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+    }
+}
@@ -3,6 +3,7 @@ package ai.startup.usuario.usuario;
 import ai.startup.usuario.auth.AuthRequestDTO;
 import ai.startup.usuario.auth.AuthResponseDTO;
 import ai.startup.usuario.auth.JwtService;
+import ai.startup.usuario.auth.PasswordHasher;
 import ai.startup.usuario.clients.PerfilClient;
 import ai.startup.usuario.clients.QuestaoClient;
 import ai.startup.usuario.plano.UserPlan;
@@ -12,21 +13,27 @@ import ai.startup.usuario.support.TemplateLoader;
 import ai.startup.usuario.privacy.ProfilePrivacy;
 import ai.startup.usuario.privacy.ProfilePrivacyRepository;
 import ai.startup.usuario.badge.BadgeRepository;
-import org.mindrot.jbcrypt.BCrypt;
+import ai.startup.usuario.ranking.LeaderboardService;
+import ai.startup.usuario.ranking.XpWindowService;
+import ai.startup.usuario.wins.WinsService;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
-import org.springframework.data.domain.Sort;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
 import java.time.LocalDate;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class UsuarioService {
 
     private final UsuarioRepository repo;
     private final JwtService jwt;
+    private final PasswordHasher passwordHasher;
 
     // NOVO: dependências para provisionar perfil e salvar plano localmente
     private final PerfilClient perfilClient;
@@ -35,61 +42,82 @@ public class UsuarioService {
     private final UserPlanRepository userPlanRepo;
     private final ProfilePrivacyRepository privacyRepo;
     private final BadgeRepository badgeRepo;
+    private final LeaderboardService leaderboard;
+    private final XpWindowService xpWindows;
+    private final WinsService winsService;
+    private final UsuarioCache cache;
+
+    private static final int RECALC_ATTEMPTS = 3; // recontagens quando o XP muda durante o recálculo
+
+    // emails cujo streak já foi atualizado hoje (zerado na virada do dia)
+    private final ConcurrentHashMap<String, Boolean> streakMemo = new ConcurrentHashMap<>();
+    private volatile LocalDate streakMemoDay = LocalDate.now();
 
     public UsuarioService(UsuarioRepository repo,
                           JwtService jwt,
+                          PasswordHasher passwordHasher,
                           PerfilClient perfilClient,
                           QuestaoClient questaoClient,
                           TemplateLoader templateLoader,
                           UserPlanRepository userPlanRepo,
                           ProfilePrivacyRepository privacyRepo,
-                          BadgeRepository badgeRepo) {
+                          BadgeRepository badgeRepo,
+                          LeaderboardService leaderboard,
+                          XpWindowService xpWindows,
+                          WinsService winsService,
+                          UsuarioCache cache) {
         this.repo = repo;
         this.jwt = jwt;
+        this.passwordHasher = passwordHasher;
         this.perfilClient = perfilClient;
         this.questaoClient = questaoClient;
         this.templateLoader = templateLoader;
         this.userPlanRepo = userPlanRepo;
         this.privacyRepo = privacyRepo;
         this.badgeRepo = badgeRepo;
+        this.leaderboard = leaderboard;
+        this.xpWindows = xpWindows;
+        this.winsService = winsService;
+        this.cache = cache;
     }
     
     /**
-     * Atualiza o streak do usuário baseado no login diário
+     * Atualiza o streak do usuário baseado no login diário (um findAndModify atômico)
      */
     public Long updateStreakOnLogin(String userId) {
-        Usuario user = repo.findById(userId)
+        Usuario saved = repo.touchLoginStreakById(userId, LocalDate.now())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado"));
-        
-        java.time.LocalDate today = java.time.LocalDate.now();
-        java.time.LocalDate lastLogin = user.getUltimoLogin();
-        Long currentStreak = user.getStreaks() != null ? user.getStreaks() : 0L;
-        
-        if (lastLogin == null) {
-            // Primeiro login
-            user.setStreaks(1L);
-            user.setUltimoLogin(today);
-        } else {
-            long daysBetween = java.time.temporal.ChronoUnit.DAYS.between(lastLogin, today);
-            
-            if (daysBetween == 0) {
-                // Mesmo dia - mantém streak
-                return currentStreak;
-            } else if (daysBetween == 1) {
-                // Login consecutivo - incrementa streak
-                user.setStreaks(currentStreak + 1);
-                user.setUltimoLogin(today);
-            } else {
-                // Quebrou o streak - reseta para 1
-                user.setStreaks(1L);
-                user.setUltimoLogin(today);
-            }
-        }
-        
-        Usuario saved = repo.save(user);
+        cache.put(saved);
+        leaderboard.update(saved);
         return saved.getStreaks();
     }
 
+    /**
+     * Usado no /users/me: atualiza o streak e devolve o usuário numa ida só ao Mongo.
+     * Quem já teve o streak tocado hoje (memo em memória) faz só a leitura, sem escrita.
+     */
+    public UsuarioDTO obterPorEmailAtualizandoStreak(String email) {
+        if (email == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "E-mail é obrigatório.");
+        }
+        String normalized = email.toLowerCase();
+        LocalDate today = LocalDate.now();
+        if (!today.equals(streakMemoDay)) {
+            streakMemo.clear();
+            streakMemoDay = today;
+        }
+        if (streakMemo.containsKey(normalized)) {
+            return obterPorEmail(normalized);
+        }
+
+        Usuario u = repo.touchLoginStreakByEmail(normalized, today)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado."));
+        cache.put(u);
+        leaderboard.update(u);
+        streakMemo.put(normalized, Boolean.TRUE);
+        return toDTO(u);
+    }
+
     public UsuarioDTO criar(UsuarioCreateDTO dto) {
         if (dto == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Payload inválido.");
@@ -112,7 +140,7 @@ public class UsuarioService {
         u.setNascimento(dto.nascimento());
         u.setEmail(dto.email() == null ? null : dto.email().toLowerCase());
         u.setLanguage(dto.language());
-        u.setSenhaHash(dto.senha() == null ? null : BCrypt.hashpw(dto.senha(), BCrypt.gensalt()));
+        u.setSenhaHash(dto.senha() == null ? null : passwordHasher.hash(dto.senha()));
         u.setWins(5L);
         u.setStreaks(0L);
         u.setXp(0L);
@@ -121,7 +149,10 @@ public class UsuarioService {
         u.setExtendedTime(false); // Padrão: sem tempo estendido
         u.setSelectedPractice(null); // Ainda não selecionou uma prática
 
-        return toDTO(repo.save(u));
+        Usuario salvo = repo.insert(u);
+        cache.put(salvo);
+        leaderboard.update(salvo);
+        return toDTO(salvo);
     }
 
     /** Registro público: força permissao=USER + provisiona Perfil (API) + salva UserPlan (local) */
@@ -147,7 +178,7 @@ public class UsuarioService {
         u.setNascimento(dto.nascimento());
         u.setEmail(dto.email() == null ? null : dto.email().toLowerCase());
         u.setLanguage(dto.language());
-        u.setSenhaHash(dto.senha() == null ? null : BCrypt.hashpw(dto.senha(), BCrypt.gensalt()));
+        u.setSenhaHash(dto.senha() == null ? null : passwordHasher.hash(dto.senha()));
         u.setWins(5L);
         u.setStreaks(0L);
         u.setXp(0L);
@@ -156,7 +187,9 @@ public class UsuarioService {
         u.setExtendedTime(false); // Padrão: sem tempo estendido
         u.setSelectedPractice(null); // Ainda não selecionou uma prática
 
-        Usuario salvo = repo.save(u);
+        Usuario salvo = repo.insert(u);
+        cache.put(salvo);
+        leaderboard.update(salvo);
 
         // Gera JWT (ainda não retorna)
         String token = jwt.gerarToken(salvo);
@@ -169,6 +202,12 @@ public class UsuarioService {
         } catch (Exception e) {
             // política: falhou provisionamento -> reverte cadastro (ou só loga; aqui vou abortar com 502)
             repo.deleteById(salvo.getId());
+            cache.invalidate(salvo.getId());
+            leaderboard.remove(salvo.getId());
+            if (e instanceof ResponseStatusException rse
+                    && rse.getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE) {
+                throw rse; // circuito aberto / bulkhead cheio: cliente pode tentar de novo depois
+            }
             throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Falha ao provisionar Perfil", e);
         }
 
@@ -183,6 +222,8 @@ public class UsuarioService {
         } catch (Exception e) {
             // se o plano falhar, aqui também reverto o usuário para manter consistência
             repo.deleteById(salvo.getId());
+            cache.invalidate(salvo.getId());
+            leaderboard.remove(salvo.getId());
             throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Falha ao salvar UserPlan", e);
         }
 
@@ -198,15 +239,28 @@ public class UsuarioService {
         Usuario u = repo.findByEmail(dto.email().toLowerCase())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "E-mail não encontrado. Tente novamente ou crie uma conta."));
 
-        if (u.getSenhaHash() == null || !BCrypt.checkpw(dto.senha(), u.getSenhaHash())) {
+        if (u.getSenhaHash() == null || !passwordHasher.matches(dto.senha(), u.getSenhaHash())) {
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Credenciais inválidas.");
         }
 
+        // custo do BCrypt mudou desde o último hash: aproveita a senha em claro para regerar
+        // $set só do hash, condicionado ao hash lido: não regrava o snapshot (wins/xp/streaks)
+        // e não sobrescreve uma troca de senha feita durante o BCrypt
+        if (passwordHasher.needsRehash(u.getSenhaHash())) {
+            try {
+                String oldHash = u.getSenhaHash();
+                repo.replacePasswordHash(u.getId(), oldHash, passwordHasher.hash(dto.senha()))
+                        .ifPresent(cache::put);
+            } catch (Exception e) {
+                System.err.println("[Usuario] Falha ao regerar hash de senha de " + u.getEmail() + ": " + e.getMessage());
+            }
+        }
+
         return new AuthResponseDTO(jwt.gerarToken(u), "Bearer");
     }
 
     public UsuarioDTO obter(String id) {
-        return repo.findById(id).map(this::toDTO)
+        return cache.findById(id).map(this::toDTO)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado."));
     }
 
@@ -214,7 +268,7 @@ public class UsuarioService {
         if (email == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "E-mail é obrigatório.");
         }
-        return repo.findByEmail(email.toLowerCase())
+        return cache.findByEmail(email.toLowerCase())
                 .map(this::toDTO)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado."));
     }
@@ -224,39 +278,50 @@ public class UsuarioService {
     }
 
     public UsuarioDTO atualizar(String id, UsuarioUpdateDTO dto, String authPermissao) {
-        var u = repo.findById(id)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado."));
-
         if (dto == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Payload inválido.");
         }
+        if (dto.permissao() != null && !"ADMIN".equalsIgnoreCase(authPermissao)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Apenas ADMIN pode alterar a permissão.");
+        }
 
-        if (dto.nome() != null) u.setNome(dto.nome());
-        if (dto.sobrenome() != null) u.setSobrenome(dto.sobrenome());
-        if (dto.telefone() != null) u.setTelefone(dto.telefone());
+        // só os campos enviados vão no $set: não sobrescreve $inc concorrente de wins/streaks/xp
+        Map<String, Object> fields = new LinkedHashMap<>();
+        if (dto.nome() != null) fields.put("nome", dto.nome());
+        if (dto.sobrenome() != null) fields.put("sobrenome", dto.sobrenome());
+        if (dto.telefone() != null) fields.put("telefone", dto.telefone());
         if (dto.nascimento() != null) {
             validarNascimento(dto.nascimento());
-            u.setNascimento(dto.nascimento());
+            fields.put("nascimento", dto.nascimento());
         }
-        if (dto.email() != null) u.setEmail(dto.email().toLowerCase());
-        if (dto.language() != null) u.setLanguage(dto.language());
-        if (dto.cpf() != null) u.setCpf(normalizarCpf(dto.cpf()));
-        if (dto.senha() != null) u.setSenhaHash(BCrypt.hashpw(dto.senha(), BCrypt.gensalt()));
-        if (dto.wins() != null) u.setWins(dto.wins());
-        if (dto.streaks() != null) u.setStreaks(dto.streaks());
-        if (dto.xp() != null) u.setXp(dto.xp());
-        if (dto.extendedTime() != null) u.setExtendedTime(dto.extendedTime());
-        if (dto.selectedPractice() != null) u.setSelectedPractice(dto.selectedPractice());
-        if (dto.selectedPractices() != null) u.setSelectedPractices(dto.selectedPractices());
-
-        if (dto.permissao() != null) {
-            if (!"ADMIN".equalsIgnoreCase(authPermissao)) {
-                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Apenas ADMIN pode alterar a permissão.");
-            }
-            u.setPermissao(dto.permissao().toUpperCase());
+        if (dto.email() != null) fields.put("email", dto.email().toLowerCase());
+        if (dto.language() != null) fields.put("language", dto.language());
+        if (dto.cpf() != null) fields.put("cpf", normalizarCpf(dto.cpf()));
+        if (dto.senha() != null) fields.put("senhaHash", passwordHasher.hash(dto.senha()));
+        if (dto.streaks() != null) fields.put("streaks", dto.streaks());
+        if (dto.xp() != null) fields.put("xp", dto.xp());
+        if (dto.extendedTime() != null) fields.put("extendedTime", dto.extendedTime());
+        if (dto.selectedPractice() != null) fields.put("selectedPractice", dto.selectedPractice());
+        if (dto.selectedPractices() != null) fields.put("selectedPractices", dto.selectedPractices());
+        if (dto.permissao() != null) fields.put("permissao", dto.permissao().toUpperCase());
+
+        Usuario anterior = repo.setFields(id, fields)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado."));
+        if (dto.wins() != null) {
+            // saldo não vai no $set: passa pelo ledger como correção manual
+            long oldWins = winsService.overwriteById(id, dto.wins());
+            System.out.println("[Usuario] Wins alterados via atualização: " + oldWins + " → " + dto.wins() + " (usuário: " + id + ")");
         }
+        cache.invalidate(id);
+        Usuario salvo = cache.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado."));
 
-        return toDTO(repo.save(u));
+        if (dto.xp() != null || dto.streaks() != null || dto.selectedPractices() != null) leaderboard.update(salvo);
+        if (dto.xp() != null) {
+            long oldXp = anterior.getXp() != null ? anterior.getXp() : 0L;
+            xpWindows.recordXpDelta(id, dto.xp() - oldXp);
+        }
+        return toDTO(salvo);
     }
 
     public void deletar(String id) {
@@ -264,6 +329,8 @@ public class UsuarioService {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado.");
         }
         repo.deleteById(id);
+        cache.invalidate(id);
+        leaderboard.remove(id);
     }
 
     /**
@@ -274,18 +341,17 @@ public class UsuarioService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Nova senha é obrigatória");
         }
         
-        Usuario u = repo.findById(userId)
+        String hash = passwordHasher.hash(newPassword);
+        repo.setFields(userId, Map.of("senhaHash", hash))
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado"));
-        
-        u.setSenhaHash(BCrypt.hashpw(newPassword, BCrypt.gensalt()));
-        repo.save(u);
+        cache.invalidate(userId);
     }
 
     /**
      * Busca perfil público de um usuário (filtrando dados privados)
      */
     public PublicProfileDTO getPublicProfile(String userId) {
-        Usuario u = repo.findById(userId)
+        Usuario u = cache.findById(userId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado"));
         
         // Busca configurações de privacidade (usa padrão se não existir)
@@ -317,94 +383,60 @@ public class UsuarioService {
     }
 
     /**
-     * Busca ranking de usuários ordenados por XP ou Streak
-     */
-    public List<UsuarioDTO> getRankingByXp(int limit) {
-        Sort sort = Sort.by(Sort.Direction.DESC, "xp", "streaks");
-        List<Usuario> users = repo.findAll(sort);
-        
-        // Limita e converte para DTO
-        return users.stream()
-                .limit(limit > 0 ? limit : 100) // Max 100
-                .map(this::toDTO)
-                .toList();
-    }
-
-    /**
-     * Busca ranking de usuários ordenados por Streak
+     * Faz upgrade para premium (custa 100 wins)
      */
-    public List<UsuarioDTO> getRankingByStreak(int limit) {
-        Sort sort = Sort.by(Sort.Direction.DESC, "streaks", "xp");
-        List<Usuario> users = repo.findAll(sort);
-        
-        // Limita e converte para DTO
-        return users.stream()
-                .limit(limit > 0 ? limit : 100) // Max 100
-                .map(this::toDTO)
-                .toList();
+    public UsuarioDTO upgradeToPremium(String userId) {
+        // guarda (saldo >= 100 e ainda não premium), débito e ativação num único update atômico
+        return toDTO(winsService.purchasePremium(userId));
     }
 
     /**
-     * Faz upgrade para premium (custa 100 wins)
+     * Debita wins do usuário se houver saldo (atômico, sem read-modify-write)
      */
-    public UsuarioDTO upgradeToPremium(String email) {
-        Usuario user = repo.findByEmail(email.toLowerCase())
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado"));
-        
-        // Verifica se já é premium
-        if (user.getIsPremium() != null && user.getIsPremium()) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Usuário já é premium");
-        }
-        
-        // Verifica se tem saldo suficiente (100 wins)
-        long currentWins = user.getWins() != null ? user.getWins() : 0L;
-        if (currentWins < 100L) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
-                "Saldo insuficiente. Necessário: 100 wins. Atual: " + currentWins + " wins");
-        }
-        
-        // Debita 100 wins e ativa premium
-        user.setWins(currentWins - 100L);
-        user.setIsPremium(true);
-        
-        return toDTO(repo.save(user));
+    public UsuarioDTO spendWins(String userId, long amount) {
+        return toDTO(winsService.debit(userId, amount));
     }
 
     /**
      * Atualiza wins diretamente (para correção de duplicação)
      */
     public UsuarioDTO updateWinsDirect(String email, long newWins) {
-        Usuario user = repo.findByEmail(email.toLowerCase())
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado"));
-        
-        long oldWins = user.getWins() != null ? user.getWins() : 0L;
-        user.setWins(newWins);
-        repo.save(user);
+        long oldWins = winsService.overwrite(email.toLowerCase(), newWins);
         
         System.out.println("[Usuario] Wins corrigidos manualmente: " + oldWins + " → " + newWins + " (usuário: " + email + ")");
         
-        return toDTO(user);
+        return obterPorEmail(email);
     }
 
     /**
      * Calcula e atualiza XP de um usuário baseado nas questões respondidas corretamente
      * XP = número de questões corretas * 10 (pode ajustar o multiplicador)
+     *
+     * O $set é condicionado ao XP lido antes da contagem: se um $inc de /internal/xp-events
+     * chegou no meio, conta de novo em vez de sobrescrevê-lo. É reparo, então não entra
+     * no XP semanal/mensal.
      */
     public UsuarioDTO recalculateXp(String userId, String bearerToken) {
-        Usuario user = repo.findById(userId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado"));
-        
         try {
-            long correctAnswers = questaoClient.countCorrectAnswers(bearerToken, userId);
-            long newXp = correctAnswers * 10L; // 10 XP por questão correta
-            
-            long oldXp = user.getXp() != null ? user.getXp() : 0L;
-            user.setXp(newXp);
-            repo.save(user);
-            
-            System.out.println("[Usuario] XP recalculado para usuário " + userId + ": " + oldXp + " → " + newXp + " (questões corretas: " + correctAnswers + ")");
-            
-            return toDTO(user);
+            for (int attempt = 1; attempt <= RECALC_ATTEMPTS; attempt++) {
+                Usuario user = repo.findById(userId)
+                        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado"));
+                long oldXp = user.getXp() != null ? user.getXp() : 0L;
+
+                long correctAnswers = questaoClient.countCorrectAnswers(bearerToken, userId);
+                long newXp = correctAnswers * 10L; // 10 XP por questão correta
+
+                Optional<Usuario> updated = repo.setXpIfUnchanged(userId, oldXp, newXp);
+                if (updated.isPresent()) {
+                    cache.put(updated.get());
+                    leaderboard.update(updated.get());
+                    System.out.println("[Usuario] XP recalculado para usuário " + userId + ": " + oldXp + " → " + newXp + " (questões corretas: " + correctAnswers + ")");
+                    return toDTO(updated.get());
+                }
+            }
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "XP do usuário mudou durante o recálculo, tente novamente");
+        } catch (ResponseStatusException e) {
+            throw e; // 404, 409 ou 503 do circuit breaker do QuestaoClient
         } catch (Exception e) {
             System.err.println("[Usuario] Erro ao recalcular XP para usuário " + userId + ": " + e.getMessage());
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, 
@@ -412,32 +444,6 @@ public class UsuarioService {
         }
     }
 
-    /**
-     * Recalcula XP de todos os usuários (endpoint administrativo)
-     */
-    public int recalculateAllXp(String bearerToken) {
-        List<Usuario> allUsers = repo.findAll();
-        int updated = 0;
-        
-        for (Usuario user : allUsers) {
-            try {
-                long correctAnswers = questaoClient.countCorrectAnswers(bearerToken, user.getId());
-                long newXp = correctAnswers * 10L;
-                
-                user.setXp(newXp);
-                repo.save(user);
-                updated++;
-                
-                System.out.println("[Usuario] XP atualizado para " + user.getEmail() + ": " + newXp + " (questões corretas: " + correctAnswers + ")");
-            } catch (Exception e) {
-                System.err.println("[Usuario] Erro ao recalcular XP para " + user.getEmail() + ": " + e.getMessage());
-            }
-        }
-        
-        System.out.println("[Usuario] XP recalculado para " + updated + " usuários");
-        return updated;
-    }
-
     // helpers
     private String normalizarCpf(String cpf) {
         return cpf == null ? null : cpf.replaceAll("\\D+", "");
@@ -2,6 +2,7 @@ package ai.startup.usuario.verification;
 
 import ai.startup.usuario.email.EmailService;
 import ai.startup.usuario.usuario.Usuario;
+import ai.startup.usuario.usuario.UsuarioCache;
 import ai.startup.usuario.usuario.UsuarioRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -21,6 +22,9 @@ public class VerificationService {
     
     @Autowired
     private UsuarioRepository usuarioRepo;
+
+    @Autowired
+    private UsuarioCache usuarioCache;
     
     @Autowired
     private EmailService emailService;
@@ -120,7 +124,7 @@ public class VerificationService {
         email = email.toLowerCase().trim();
         
         // Verifica se usuário existe
-        Usuario user = usuarioRepo.findByEmail(email)
+        Usuario user = usuarioCache.findByEmail(email)
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado"));
         
         // Remove códigos antigos deste email
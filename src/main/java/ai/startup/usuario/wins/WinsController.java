@@ -0,0 +1,61 @@
+package ai.startup.usuario.wins;
+
+import ai.startup.usuario.auth.CurrentUser;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+public class WinsController {
+
+    private final WinsService winsService;
+    private final CurrentUser currentUser;
+
+    public WinsController(WinsService winsService, CurrentUser currentUser) {
+        this.winsService = winsService;
+        this.currentUser = currentUser;
+    }
+
+    /**
+     * GET /users/me/wins/ledger?limit= - Histórico de créditos/débitos de wins
+     */
+    @SecurityRequirement(name = "bearerAuth")
+    @GetMapping("/users/me/wins/ledger")
+    public ResponseEntity<List<WinsLedgerEntryDTO>> myLedger(
+        @RequestParam(defaultValue = "50") int limit,
+        HttpServletRequest req
+    ) {
+        String email = (String) req.getAttribute("authEmail");
+        if (email == null || email.isBlank()) {
+            return ResponseEntity.status(401).build();
+        }
+        return ResponseEntity.ok(winsService.history(currentUser.id(), limit));
+    }
+
+    /**
+     * GET /admin/wins/{userId}/ledger?limit= - Histórico de um usuário (ADMIN)
+     */
+    @SecurityRequirement(name = "bearerAuth")
+    @GetMapping("/admin/wins/{userId}/ledger")
+    public ResponseEntity<List<WinsLedgerEntryDTO>> ledger(
+        @PathVariable String userId,
+        @RequestParam(defaultValue = "50") int limit
+    ) {
+        return ResponseEntity.ok(winsService.history(userId, limit));
+    }
+
+    /**
+     * GET /admin/wins/{userId}/reconcile - Saldo corrente x saldo do ledger (ADMIN)
+     */
+    @SecurityRequirement(name = "bearerAuth")
+    @GetMapping("/admin/wins/{userId}/reconcile")
+    public ResponseEntity<WinsReconcileDTO> reconcile(@PathVariable String userId) {
+        return ResponseEntity.ok(winsService.reconcile(userId));
+    }
+}
@@ -0,0 +1,242 @@
+package ai.startup.usuario.wins;
+
+import ai.startup.usuario.metrics.MetricsSource;
+import ai.startup.usuario.usuario.Usuario;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ledger append-only de wins (wins_ledger) + snapshots por usuário (wins_snapshots).
+ *
+ * Usuario.wins continua sendo o saldo lido em O(1); o ledger é a trilha de auditoria
+ * e permite reconstruir o saldo como snapshot + cauda. O compactador periódico
+ * consolida a cauda antiga no snapshot, mantendo a reconstrução barata.
+ *
+ * Custo por mudança de saldo: um insert em wins_ledger. O snapshot é criado uma vez por
+ * usuário (seed) antes da primeira mudança e depois só muda na compactação.
+ */
+@Service
+public class WinsLedger implements MetricsSource {
+
+    private final MongoTemplate mongoTemplate;
+    private final long compactAfterMs;
+    private final int compactBatch;
+
+    private static final int APPEND_ATTEMPTS = 2;
+    private static final int MAX_SEEDED = 100_000;
+
+    private final Set<String> seeded = ConcurrentHashMap.newKeySet(); // usuários com snapshot já visto
+    private final Queue<WinsLedgerEntry> pending = new ConcurrentLinkedQueue<>(); // inserts a refazer
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong appendFailures = new AtomicLong();
+    private final AtomicLong seededSnapshots = new AtomicLong();
+    private final AtomicLong compactedEntries = new AtomicLong();
+    private final AtomicLong compactedSnapshots = new AtomicLong();
+
+    public WinsLedger(MongoTemplate mongoTemplate,
+                      @Value("${wins.ledger.compact-after-minutes:60}") long compactAfterMinutes,
+                      @Value("${wins.ledger.compact-batch:500}") int compactBatch) {
+        this.mongoTemplate = mongoTemplate;
+        this.compactAfterMs = compactAfterMinutes * 60_000L;
+        this.compactBatch = compactBatch;
+    }
+
+    /**
+     * Garante o snapshot do usuário ANTES da primeira mudança de saldo: balance = Usuario.wins
+     * lido agora (saldo legado) e compactedUntil = época, então todo lançamento entra na cauda.
+     * Só o primeiro insert vale e toda mudança espera o snapshot existir, logo o saldo que ele
+     * leu é anterior a qualquer lançamento, mesmo com as primeiras operações em paralelo.
+     * Usuário inexistente: não faz nada (a operação devolve 404). Falha do Mongo propaga: melhor
+     * recusar a operação do que mudar o saldo sem base no ledger.
+     */
+    public void seed(String userId) {
+        if (seeded.contains(userId)) return;
+        Query byId = new Query(Criteria.where("_id").is(userId));
+        if (!mongoTemplate.exists(byId, WinsSnapshot.class)) {
+            Query user = new Query(Criteria.where("_id").is(userId));
+            user.fields().include("wins");
+            Usuario u = mongoTemplate.findOne(user, Usuario.class);
+            if (u == null) return;
+            try {
+                mongoTemplate.insert(new WinsSnapshot(userId, u.getWins() != null ? u.getWins() : 0L, new Date(0), new Date()));
+                seededSnapshots.incrementAndGet();
+            } catch (DuplicateKeyException e) {
+                // outra operação (ou instância) semeou antes; o snapshot dela vale
+            }
+        }
+        if (seeded.size() >= MAX_SEEDED) seeded.clear(); // volta a checar no Mongo
+        seeded.add(userId);
+    }
+
+    /**
+     * Registra um lançamento já aplicado em Usuario.wins (o snapshot já existe: ver seed).
+     * O id é gerado aqui, então refazer o insert nunca duplica; se o Mongo continuar falhando
+     * o lançamento fica na fila e retryPending tenta de novo.
+     */
+    public void append(String userId, long delta, long balanceAfter, WinsSource source, String reference) {
+        if (delta == 0) return;
+        WinsLedgerEntry entry = new WinsLedgerEntry(new ObjectId().toHexString(), userId, delta, balanceAfter,
+                source, reference, new Date());
+        if (!write(entry)) {
+            pending.add(entry);
+        }
+    }
+
+    /**
+     * Refaz os inserts que falharam. Um lançamento que ficou na fila mais que metade de
+     * compact-after-minutes ganha createdAt novo, para não cair atrás de um snapshot já
+     * compactado (o saldo só depende da soma dos deltas).
+     */
+    @Scheduled(fixedDelayString = "${wins.ledger.retry-interval-ms:5000}")
+    public void retryPending() {
+        long stale = System.currentTimeMillis() - compactAfterMs / 2;
+        for (int n = pending.size(); n > 0; n--) {
+            WinsLedgerEntry entry = pending.poll();
+            if (entry == null) return;
+            if (entry.getCreatedAt().getTime() < stale) {
+                entry.setCreatedAt(new Date());
+            }
+            if (!write(entry)) {
+                pending.add(entry); // Mongo ainda fora: próximo ciclo
+                return;
+            }
+        }
+    }
+
+    private boolean write(WinsLedgerEntry entry) {
+        Exception last = null;
+        for (int attempt = 0; attempt < APPEND_ATTEMPTS; attempt++) {
+            try {
+                mongoTemplate.insert(entry);
+                appended.incrementAndGet();
+                return true;
+            } catch (DuplicateKeyException e) {
+                return true; // a tentativa anterior chegou a gravar
+            } catch (Exception e) {
+                last = e;
+            }
+        }
+        appendFailures.incrementAndGet();
+        System.err.println("[Wins] Falha ao registrar lançamento " + entry.getSource() + " (" + entry.getDelta()
+                + ") de " + entry.getUserId() + ", na fila para nova tentativa: " + last.getMessage());
+        return false;
+    }
+
+    /**
+     * Últimos lançamentos do usuário (mais recentes primeiro)
+     */
+    public List<WinsLedgerEntry> history(String userId, int limit) {
+        Query query = new Query(Criteria.where("userId").is(userId))
+                .with(Sort.by(Sort.Direction.DESC, "createdAt"))
+                .limit(limit);
+        return mongoTemplate.find(query, WinsLedgerEntry.class);
+    }
+
+    /**
+     * Reconstrói o saldo pelo ledger e compara com o saldo corrente
+     */
+    public WinsReconcileDTO reconcile(String userId, long currentBalance) {
+        WinsSnapshot snap = mongoTemplate.findById(userId, WinsSnapshot.class);
+        if (snap == null) {
+            // usuário sem nenhum lançamento: o saldo legado é o próprio snapshot
+            return new WinsReconcileDTO(userId, currentBalance, currentBalance, currentBalance, 0, true);
+        }
+        long base = snap.getBalance() != null ? snap.getBalance() : 0L;
+        long[] tail = sumRange(userId, snap.getCompactedUntil(), null);
+        long ledgerBalance = base + tail[0];
+        return new WinsReconcileDTO(userId, currentBalance, ledgerBalance, base, tail[1],
+                ledgerBalance == currentBalance);
+    }
+
+    /**
+     * Consolida no snapshot os lançamentos mais antigos que compact-after-minutes.
+     * Os usuários a compactar saem dos lançamentos criados na última janela de
+     * compact-after-minutes antes do corte (índice em createdAt); cada um passa por
+     * várias execuções dentro da janela. O avanço do snapshot é condicionado ao
+     * compactedUntil lido, então duas instâncias rodando ao mesmo tempo nunca somam a
+     * mesma cauda duas vezes.
+     */
+    @Scheduled(fixedDelayString = "${wins.ledger.compact-interval-ms:600000}")
+    public void compact() {
+        Date cutoff = new Date(System.currentTimeMillis() - compactAfterMs);
+        Date since = new Date(cutoff.getTime() - compactAfterMs);
+        Aggregation recent = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("createdAt").gt(since).lte(cutoff)),
+                Aggregation.group("userId"),
+                Aggregation.limit(compactBatch));
+        try {
+            for (Document d : mongoTemplate.aggregate(recent, WinsLedgerEntry.class, Document.class).getMappedResults()) {
+                WinsSnapshot snap = mongoTemplate.findById(d.getString("_id"), WinsSnapshot.class);
+                if (snap == null || !snap.getCompactedUntil().before(cutoff)) continue;
+                long[] folded = sumRange(snap.getUserId(), snap.getCompactedUntil(), cutoff);
+                Query cas = new Query(Criteria.where("_id").is(snap.getUserId())
+                        .and("compactedUntil").is(snap.getCompactedUntil()));
+                Update update = new Update()
+                        .inc("balance", folded[0])
+                        .set("compactedUntil", cutoff)
+                        .set("updatedAt", new Date());
+                if (mongoTemplate.findAndModify(cas, update, FindAndModifyOptions.options(), WinsSnapshot.class) != null) {
+                    compactedEntries.addAndGet(folded[1]);
+                    compactedSnapshots.incrementAndGet();
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("[Wins] Falha na compactação do ledger: " + e.getMessage());
+        }
+    }
+
+    /** {soma dos deltas, quantidade} dos lançamentos com from < createdAt <= to (to null = sem limite) */
+    private long[] sumRange(String userId, Date from, Date to) {
+        Criteria c = Criteria.where("userId").is(userId);
+        if (to != null) {
+            c = c.and("createdAt").gt(from).lte(to);
+        } else {
+            c = c.and("createdAt").gt(from);
+        }
+        Aggregation agg = Aggregation.newAggregation(
+                Aggregation.match(c),
+                Aggregation.group().sum("delta").as("sum").count().as("count"));
+        Document result = mongoTemplate.aggregate(agg, WinsLedgerEntry.class, Document.class).getUniqueMappedResult();
+        if (result == null) return new long[]{0L, 0L};
+        return new long[]{((Number) result.get("sum")).longValue(), ((Number) result.get("count")).longValue()};
+    }
+
+    @Override
+    public String metricsName() {
+        return "winsLedger";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("appended", appended.get());
+        m.put("appendFailures", appendFailures.get());
+        m.put("pendingRetries", pending.size());
+        m.put("seededSnapshots", seededSnapshots.get());
+        m.put("compactedEntries", compactedEntries.get());
+        m.put("compactedSnapshots", compactedSnapshots.get());
+        return m;
+    }
+}
@@ -0,0 +1,32 @@
+package ai.startup.usuario.wins;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Lançamento imutável de crédito/débito de wins. Nunca é alterado nem apagado:
+ * a compactação só avança o snapshot do usuário.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document("wins_ledger")
+@CompoundIndex(name = "user_created", def = "{'userId': 1, 'createdAt': 1}")
+public class WinsLedgerEntry {
+    @Id
+    private String id;
+    private String userId;
+    private Long delta;          // positivo = crédito, negativo = débito
+    private Long balanceAfter;   // saldo de Usuario.wins logo após a operação
+    private WinsSource source;
+    private String reference;    // ex: sessionId do Stripe
+    @Indexed
+    private Date createdAt;      // também usado pela compactação para achar usuários com cauda
+}
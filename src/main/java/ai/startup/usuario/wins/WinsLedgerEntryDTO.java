@@ -0,0 +1,12 @@
+package ai.startup.usuario.wins;
+
+import java.util.Date;
+
+public record WinsLedgerEntryDTO(
+        String id,
+        Long delta,
+        Long balanceAfter,
+        WinsSource source,
+        String reference,
+        Date createdAt
+) {}
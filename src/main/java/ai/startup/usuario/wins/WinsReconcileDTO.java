@@ -0,0 +1,13 @@
+package ai.startup.usuario.wins;
+
+/**
+ * Comparação entre o saldo corrente (Usuario.wins) e o saldo reconstruído pelo ledger
+ */
+public record WinsReconcileDTO(
+        String userId,
+        long balance,
+        long ledgerBalance,
+        long snapshotBalance,
+        long tailEntries,
+        boolean consistent
+) {}
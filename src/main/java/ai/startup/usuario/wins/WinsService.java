@@ -0,0 +1,158 @@
+package ai.startup.usuario.wins;
+
+import ai.startup.usuario.auth.EntitlementCache;
+import ai.startup.usuario.usuario.Usuario;
+import ai.startup.usuario.usuario.UsuarioCache;
+import ai.startup.usuario.usuario.UsuarioRepository;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+/**
+ * Operações sobre o saldo de wins.
+ *
+ * Cada operação é um único update condicional no Mongo ($inc com guarda wins >= custo),
+ * então compras e gastos simultâneos nunca sobrescrevem um ao outro. Toda mudança
+ * de saldo também é registrada no ledger (WinsLedger) para auditoria; o snapshot do
+ * ledger é semeado antes do primeiro update do usuário (WinsLedger.seed).
+ */
+@Service
+public class WinsService {
+
+    public static final long PREMIUM_COST = 100L;
+    private static final int MAX_HISTORY = 200;
+
+    private final UsuarioRepository repo;
+    private final WinsLedger ledger;
+    private final EntitlementCache entitlements;
+    private final UsuarioCache cache;
+
+    public WinsService(UsuarioRepository repo, WinsLedger ledger, EntitlementCache entitlements, UsuarioCache cache) {
+        this.repo = repo;
+        this.ledger = ledger;
+        this.entitlements = entitlements;
+        this.cache = cache;
+    }
+
+    /**
+     * Credita wins (ex: compra de pacote; reference = sessionId, só vai para o ledger).
+     * Não é idempotente: quem chama garante que o crédito é aplicado uma vez (ex: claim em
+     * processed_payments).
+     */
+    public Usuario credit(String userId, long amount, WinsSource source, String reference) {
+        if (amount <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Quantidade de wins deve ser positiva");
+        }
+        ledger.seed(userId);
+        Usuario u = repo.incrementWins(userId, amount)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado"));
+        cache.put(u);
+        ledger.append(userId, amount, balanceOf(u), source, reference);
+        return u;
+    }
+
+    /**
+     * Debita wins se houver saldo (ex: iniciar simulado)
+     */
+    public Usuario debit(String userId, long cost) {
+        if (cost <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Quantidade de wins deve ser positiva");
+        }
+        ledger.seed(userId);
+        Usuario updated = repo.decrementWinsIfEnough(userId, cost).orElseThrow(() -> {
+            Usuario u = repo.findById(userId)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado"));
+            return insufficient(cost, u);
+        });
+        cache.put(updated);
+        ledger.append(userId, -cost, balanceOf(updated), WinsSource.SPEND, null);
+        return updated;
+    }
+
+    /**
+     * Upgrade para premium: debita PREMIUM_COST e ativa isPremium no mesmo update
+     */
+    public Usuario purchasePremium(String userId) {
+        ledger.seed(userId);
+        Usuario updated = repo.purchasePremium(userId, PREMIUM_COST).orElseThrow(() -> {
+            // falhou a guarda: descobre o motivo só para a mensagem de erro
+            Usuario u = repo.findById(userId)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado"));
+            if (Boolean.TRUE.equals(u.getIsPremium())) {
+                return new ResponseStatusException(HttpStatus.BAD_REQUEST, "Usuário já é premium");
+            }
+            return insufficient(PREMIUM_COST, u);
+        });
+        cache.put(updated);
+        ledger.append(updated.getId(), -PREMIUM_COST, balanceOf(updated), WinsSource.PREMIUM_UPGRADE, null);
+        entitlements.update(updated);
+        return updated;
+    }
+
+    /**
+     * Ativa/desativa premium a partir de um evento de assinatura (eventCreated = created do Stripe).
+     * Eventos mais antigos que o último aplicado são ignorados: reentregas fora de ordem não
+     * reativam uma assinatura cancelada.
+     */
+    public Usuario setPremium(String userId, boolean premium, long eventCreated, String subscriptionId) {
+        Usuario updated = repo.updatePremium(userId, premium, eventCreated, subscriptionId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado"));
+        cache.put(updated);
+        entitlements.update(updated);
+        return updated;
+    }
+
+    /**
+     * Define o saldo diretamente (correção manual). Retorna o saldo anterior.
+     */
+    public long overwrite(String email, long newWins) {
+        Usuario u = repo.findByEmail(email)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado"));
+        return overwriteById(u.getId(), newWins);
+    }
+
+    /**
+     * Mesmo que overwrite, pelo id (ex: PUT /users/{id} com wins)
+     */
+    public long overwriteById(String userId, long newWins) {
+        ledger.seed(userId);
+        Usuario before = repo.replaceWins(userId, newWins)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado"));
+        cache.invalidate(before.getId()); // findAndModify devolveu o documento anterior
+        long oldWins = balanceOf(before);
+        ledger.append(before.getId(), newWins - oldWins, newWins, WinsSource.ADMIN_FIX, null);
+        return oldWins;
+    }
+
+    /**
+     * Últimos lançamentos do ledger do usuário
+     */
+    public List<WinsLedgerEntryDTO> history(String userId, int limit) {
+        int n = Math.max(1, Math.min(limit, MAX_HISTORY));
+        return ledger.history(userId, n).stream()
+                .map(e -> new WinsLedgerEntryDTO(e.getId(), e.getDelta(), e.getBalanceAfter(),
+                        e.getSource(), e.getReference(), e.getCreatedAt()))
+                .toList();
+    }
+
+    /**
+     * Compara Usuario.wins com o saldo reconstruído pelo ledger (snapshot + cauda)
+     */
+    public WinsReconcileDTO reconcile(String userId) {
+        Usuario u = repo.findById(userId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuário não encontrado"));
+        return ledger.reconcile(userId, balanceOf(u));
+    }
+
+    private static long balanceOf(Usuario u) {
+        return u.getWins() != null ? u.getWins() : 0L;
+    }
+
+    private static ResponseStatusException insufficient(long cost, Usuario u) {
+        long current = balanceOf(u);
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "Saldo insuficiente. Necessário: " + cost + " wins. Atual: " + current + " wins");
+    }
+}
@@ -0,0 +1,25 @@
+package ai.startup.usuario.wins;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Saldo consolidado de um usuário: soma de todos os lançamentos com
+ * createdAt <= compactedUntil. Saldo do ledger = balance + cauda após compactedUntil.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document("wins_snapshots")
+public class WinsSnapshot {
+    @Id
+    private String userId;
+    private Long balance;
+    private Date compactedUntil;
+    private Date updatedAt;
+}
@@ -0,0 +1,11 @@
+package ai.startup.usuario.wins;
+
+/**
+ * Origem de um lançamento no ledger de wins
+ */
+public enum WinsSource {
+    STRIPE,            // compra de pacote (reference = sessionId)
+    PREMIUM_UPGRADE,   // upgrade para premium pago com wins
+    SPEND,             // gasto pelo usuário
+    ADMIN_FIX          // correção manual do saldo
+}
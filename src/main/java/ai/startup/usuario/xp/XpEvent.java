@@ -0,0 +1,28 @@
+package ai.startup.usuario.xp;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Evento de resposta já aplicado ao XP (xp_events). O _id é o id do evento no serviço de
+ * questões: reentregas são descartadas no insert. Expira via TTL depois da janela de dedup.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document("xp_events")
+public class XpEvent {
+    @Id
+    private String eventId;
+    private String userId;
+    private long xp;
+    private Date receivedAt;
+    @Indexed(expireAfterSeconds = 0)
+    private Date expiresAt;
+}
@@ -0,0 +1,42 @@
+package ai.startup.usuario.xp;
+
+import io.swagger.v3.oas.annotations.Operation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+@RestController
+public class XpEventController {
+
+    private final XpEventService xpEvents;
+    private final byte[] internalToken;
+
+    public XpEventController(XpEventService xpEvents,
+                             @Value("${internal.api.token:}") String internalToken) {
+        this.xpEvents = xpEvents;
+        this.internalToken = internalToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * POST /internal/xp-events - Resultados de resposta do serviço de questões (serviço a serviço)
+     * Autenticado pelo header X-Internal-Token; sem token configurado a rota fica desligada.
+     */
+    @Operation(security = {})  // sem JWT de usuário
+    @PostMapping("/internal/xp-events")
+    public ResponseEntity<XpEventDTO.Result> ingest(
+        @RequestBody XpEventDTO batch,
+        @RequestHeader(value = "X-Internal-Token", required = false) String token
+    ) {
+        if (internalToken.length == 0 || token == null
+                || !MessageDigest.isEqual(internalToken, token.getBytes(StandardCharsets.UTF_8))) {
+            return ResponseEntity.status(401).build();
+        }
+        return ResponseEntity.ok(xpEvents.ingest(batch));
+    }
+}
@@ -0,0 +1,19 @@
+package ai.startup.usuario.xp;
+
+import java.util.List;
+
+/**
+ * Lote de resultados de resposta enviado pelo serviço de questões
+ */
+public record XpEventDTO(
+    List<Item> events
+) {
+    public record Item(
+        String eventId,   // único por resposta; reentregas com o mesmo id são ignoradas
+        String userId,
+        Boolean correct
+    ) {}
+
+    /** Resultado da ingestão de um lote */
+    public record Result(int received, int accepted, int duplicates, int invalid, int unknownUsers) {}
+}
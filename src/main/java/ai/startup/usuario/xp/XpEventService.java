@@ -0,0 +1,387 @@
+package ai.startup.usuario.xp;
+
+import ai.startup.usuario.metrics.MetricsSource;
+import ai.startup.usuario.ranking.LeaderboardService;
+import ai.startup.usuario.ranking.XpWindowService;
+import ai.startup.usuario.usuario.Usuario;
+import ai.startup.usuario.usuario.UsuarioCache;
+import com.mongodb.bulk.BulkWriteError;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ingestão incremental de XP a partir dos resultados de resposta (POST /internal/xp-events).
+ *
+ * Os lotes recebidos entram numa fila e a cada window-ms o flush: grava todos os eventos
+ * em xp_events (insert não ordenado; _id duplicado = reentrega), soma o XP aceito por
+ * usuário e aplica um $inc por usuário num único bulkWrite. A requisição só responde
+ * depois do flush, então um 200 significa XP aplicado. Eventos cujo $inc com certeza falhou
+ * são liberados para a reentrega; se o resultado for incerto o dedup é mantido (nunca soma
+ * duas vezes). Eventos de usuário inexistente são reportados e não ficam no dedup.
+ *
+ * O flush roda numa thread própria (xp-events-flush), fora do scheduler compartilhado.
+ *
+ * O recálculo completo (XpRecalcService) fica só para reparo.
+ */
+@Service
+public class XpEventService implements MetricsSource {
+
+    static final long XP_PER_CORRECT = 10L;
+
+    private final MongoTemplate mongoTemplate;
+    private final UsuarioCache usuarioCache;
+    private final LeaderboardService leaderboard;
+    private final XpWindowService xpWindows;
+
+    private final int maxBatch;
+    private final long dedupTtlMs;
+    private final long waitTimeoutMs;
+    private final long windowMs;
+    private ScheduledExecutorService flusher;
+
+    private enum Outcome { ACCEPTED, DUPLICATE, UNKNOWN_USER, FAILED }
+
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedEvents = new AtomicInteger();
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder userIncrements = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private final LongAdder ambiguousFlushes = new LongAdder();
+    private final LongAdder unknownUsers = new LongAdder();
+
+    /** Lote de uma requisição aguardando o próximo flush */
+    private record Pending(List<XpEvent> events, int invalid, CompletableFuture<XpEventDTO.Result> done) {}
+
+    public XpEventService(MongoTemplate mongoTemplate,
+                          UsuarioCache usuarioCache,
+                          LeaderboardService leaderboard,
+                          XpWindowService xpWindows,
+                          @Value("${xp.events.max-batch:1000}") int maxBatch,
+                          @Value("${xp.events.dedup-ttl-hours:72}") long dedupTtlHours,
+                          @Value("${xp.events.wait-timeout-ms:10000}") long waitTimeoutMs,
+                          @Value("${xp.events.window-ms:200}") long windowMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.usuarioCache = usuarioCache;
+        this.leaderboard = leaderboard;
+        this.xpWindows = xpWindows;
+        this.maxBatch = maxBatch;
+        this.dedupTtlMs = dedupTtlHours * 3_600_000L;
+        this.waitTimeoutMs = waitTimeoutMs;
+        this.windowMs = Math.max(1, windowMs);
+    }
+
+    /**
+     * Enfileira o lote e espera o flush que o aplica
+     */
+    public XpEventDTO.Result ingest(XpEventDTO batch) {
+        List<XpEventDTO.Item> items = batch != null && batch.events() != null ? batch.events() : List.of();
+        if (items.size() > maxBatch) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Máximo de " + maxBatch + " eventos por lote");
+        }
+
+        Date now = new Date();
+        Date expiresAt = new Date(now.getTime() + dedupTtlMs);
+        List<XpEvent> events = new ArrayList<>(items.size());
+        int bad = 0;
+        for (XpEventDTO.Item it : items) {
+            if (it == null || isBlank(it.eventId()) || isBlank(it.userId()) || it.correct() == null) {
+                bad++;
+                continue;
+            }
+            long xp = it.correct() ? XP_PER_CORRECT : 0L;
+            events.add(new XpEvent(it.eventId(), it.userId(), xp, now, expiresAt));
+        }
+        received.add(items.size());
+        invalid.add(bad);
+        if (events.isEmpty()) {
+            return new XpEventDTO.Result(items.size(), 0, 0, bad, 0);
+        }
+
+        Pending p = new Pending(events, bad, new CompletableFuture<>());
+        queue.add(p);
+        queuedEvents.addAndGet(events.size());
+        try {
+            return p.done().get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // o lote ainda pode ser aplicado; a reentrega com os mesmos ids é deduplicada
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Timeout aguardando aplicação do XP");
+        } catch (ExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Falha ao aplicar XP: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrompido");
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        // thread própria: o scheduler padrão do Spring (1 thread) é dividido com compactação,
+        // rollover de rankings etc., e um flush atrasado vira 503 na ingestão
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "xp-events-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushSafely, windowMs, windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flushSafely(); // o que ficou na fila
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            // nunca deixa a exceção cancelar o agendamento
+            System.err.println("[XP Events] Erro inesperado no flush: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Micro-batch: aplica tudo que chegou desde o último flush
+     */
+    void flush() {
+        List<Pending> drained = new ArrayList<>();
+        List<XpEvent> events = new ArrayList<>();
+        Pending p;
+        while ((p = queue.poll()) != null) {
+            drained.add(p);
+            events.addAll(p.events());
+        }
+        if (drained.isEmpty()) return;
+        queuedEvents.addAndGet(-events.size());
+        flushes.increment();
+
+        Outcome[] outcome = new Outcome[events.size()];
+        try {
+            // evento de usuário inexistente não é gravado nem conta como aceito
+            Set<String> known = existingUsers(events);
+            List<XpEvent> toInsert = new ArrayList<>();
+            List<Integer> insertIndex = new ArrayList<>();
+            for (int i = 0; i < events.size(); i++) {
+                if (known.contains(events.get(i).getUserId())) {
+                    toInsert.add(events.get(i));
+                    insertIndex.add(i);
+                } else {
+                    outcome[i] = Outcome.UNKNOWN_USER;
+                }
+            }
+            Set<Integer> dups = insertDedup(toInsert);
+            for (int j = 0; j < toInsert.size(); j++) {
+                outcome[insertIndex.get(j)] = dups.contains(j) ? Outcome.DUPLICATE : Outcome.ACCEPTED;
+            }
+        } catch (Exception e) {
+            fail(drained, e);
+            return;
+        }
+
+        // soma por usuário só o que foi aceito
+        Map<String, Long> deltas = new LinkedHashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            XpEvent e = events.get(i);
+            if (outcome[i] == Outcome.ACCEPTED && e.getXp() != 0) deltas.merge(e.getUserId(), e.getXp(), Long::sum);
+        }
+
+        Set<String> failedUsers;
+        try {
+            failedUsers = applyDeltas(deltas);
+        } catch (Exception e) {
+            // resultado desconhecido (parte dos $inc pode ter sido aplicada): mantém o dedup para
+            // não somar duas vezes na reentrega; o recálculo (reparo) corrige o que faltar
+            ambiguousFlushes.increment();
+            System.err.println("[XP Events] Flush com resultado incerto, dedup mantido: " + e.getMessage());
+            fail(drained, e);
+            return;
+        }
+
+        if (!failedUsers.isEmpty()) {
+            // esses $inc com certeza não foram aplicados: libera os eventos para a reentrega
+            List<String> release = new ArrayList<>();
+            for (int i = 0; i < events.size(); i++) {
+                if (outcome[i] == Outcome.ACCEPTED && failedUsers.contains(events.get(i).getUserId())) {
+                    outcome[i] = Outcome.FAILED;
+                    release.add(events.get(i).getEventId());
+                }
+            }
+            try {
+                mongoTemplate.remove(new Query(Criteria.where("_id").in(release)), XpEvent.class);
+            } catch (Exception ex) {
+                System.err.println("[XP Events] Falha ao liberar " + release.size() + " eventos: " + ex.getMessage());
+            }
+            flushFailures.increment();
+        }
+
+        // devolve a cada requisição a contagem dos seus eventos
+        int offset = 0;
+        for (Pending d : drained) {
+            int n = d.events().size();
+            int ok = 0, dup = 0, unknown = 0, failed = 0;
+            for (int i = offset; i < offset + n; i++) {
+                switch (outcome[i]) {
+                    case ACCEPTED -> ok++;
+                    case DUPLICATE -> dup++;
+                    case UNKNOWN_USER -> unknown++;
+                    case FAILED -> failed++;
+                }
+            }
+            offset += n;
+            accepted.add(ok);
+            duplicates.add(dup);
+            unknownUsers.add(unknown);
+            if (failed > 0) {
+                // a reentrega do lote inteiro é segura: os já aplicados voltam como duplicados
+                d.done().completeExceptionally(new IllegalStateException(failed + " eventos não aplicados"));
+            } else {
+                d.done().complete(new XpEventDTO.Result(n + d.invalid(), ok, dup, d.invalid(), unknown));
+            }
+        }
+        userIncrements.add(deltas.size() - failedUsers.size());
+    }
+
+    private Set<String> existingUsers(List<XpEvent> events) {
+        Set<String> ids = new HashSet<>();
+        for (XpEvent e : events) ids.add(e.getUserId());
+        Query query = new Query(Criteria.where("_id").in(ids));
+        query.fields().include("_id");
+        Set<String> known = new HashSet<>();
+        for (Usuario u : mongoTemplate.find(query, Usuario.class)) known.add(u.getId());
+        return known;
+    }
+
+    /** Insere os eventos; devolve os índices rejeitados por _id duplicado */
+    private Set<Integer> insertDedup(List<XpEvent> events) {
+        Set<Integer> dups = new HashSet<>();
+        if (events.isEmpty()) return dups;
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, XpEvent.class);
+        bulk.insert(events);
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            Set<Integer> failed = new HashSet<>();
+            boolean unexpected = false;
+            for (BulkWriteError err : e.getErrors()) {
+                failed.add(err.getIndex());
+                if (err.getCode() == 11000) dups.add(err.getIndex());
+                else unexpected = true;
+            }
+            if (unexpected) {
+                // remove o que entrou para que a reentrega do lote inteiro seja aceita
+                List<String> inserted = new ArrayList<>();
+                for (int i = 0; i < events.size(); i++) {
+                    if (!failed.contains(i)) inserted.add(events.get(i).getEventId());
+                }
+                mongoTemplate.remove(new Query(Criteria.where("_id").in(inserted)), XpEvent.class);
+                throw e;
+            }
+        }
+        return dups;
+    }
+
+    /**
+     * Um $inc por usuário num bulkWrite; depois atualiza cache, ranking e janelas semanais/mensais.
+     * Devolve os usuários cujo $inc com certeza falhou (erros por operação do bulk).
+     */
+    private Set<String> applyDeltas(Map<String, Long> deltas) {
+        Set<String> failed = new HashSet<>();
+        if (deltas.isEmpty()) return failed;
+        List<String> order = new ArrayList<>(deltas.keySet());
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Usuario.class);
+        for (String userId : order) {
+            bulk.updateOne(new Query(Criteria.where("_id").is(userId)), new Update().inc("xp", deltas.get(userId)));
+        }
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError err : e.getErrors()) failed.add(order.get(err.getIndex()));
+        }
+
+        List<String> applied = new ArrayList<>(order);
+        applied.removeAll(failed);
+        if (applied.isEmpty()) return failed;
+        Query totals = new Query(Criteria.where("_id").in(applied));
+        totals.fields().include("xp").include("streaks");
+        for (Usuario u : mongoTemplate.find(totals, Usuario.class)) {
+            usuarioCache.invalidate(u.getId());
+            leaderboard.update(u.getId(), u.getXp() != null ? u.getXp() : 0L, u.getStreaks() != null ? u.getStreaks() : 0L);
+            xpWindows.recordXpDelta(u.getId(), deltas.get(u.getId()));
+        }
+        return failed;
+    }
+
+    private void fail(List<Pending> drained, Exception e) {
+        flushFailures.increment();
+        System.err.println("[XP Events] Falha no flush de " + drained.size() + " lotes: " + e.getMessage());
+        for (Pending d : drained) {
+            d.done().completeExceptionally(e);
+        }
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    @Override
+    public String metricsName() {
+        return "xpEvents";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("received", received.sum());
+        m.put("accepted", accepted.sum());
+        m.put("duplicates", duplicates.sum());
+        m.put("invalid", invalid.sum());
+        m.put("flushes", flushes.sum());
+        m.put("userIncrements", userIncrements.sum());
+        m.put("flushFailures", flushFailures.sum());
+        m.put("ambiguousFlushes", ambiguousFlushes.sum());
+        m.put("unknownUsers", unknownUsers.sum());
+        m.put("queued", queuedEvents.get());
+        return m;
+    }
+}
@@ -0,0 +1,58 @@
+package ai.startup.usuario.xp;
+
+import ai.startup.usuario.auth.CurrentUser;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class XpRecalcController {
+
+    private final XpRecalcService xpRecalc;
+    private final CurrentUser currentUser;
+
+    public XpRecalcController(XpRecalcService xpRecalc, CurrentUser currentUser) {
+        this.xpRecalc = xpRecalc;
+        this.currentUser = currentUser;
+    }
+
+    /**
+     * POST /admin/recalculate-all-xp - Inicia o recálculo de XP de todos os usuários em background (ADMIN)
+     */
+    @SecurityRequirement(name = "bearerAuth")
+    @PostMapping("/admin/recalculate-all-xp")
+    public ResponseEntity<XpRecalcJobDTO> start() {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(xpRecalc.start(currentUser.id()));
+    }
+
+    /**
+     * GET /admin/xp-jobs/{id} - Progresso e throughput do job (ADMIN)
+     */
+    @SecurityRequirement(name = "bearerAuth")
+    @GetMapping("/admin/xp-jobs/{id}")
+    public ResponseEntity<XpRecalcJobDTO> status(@PathVariable String id) {
+        return ResponseEntity.ok(xpRecalc.status(id));
+    }
+
+    /**
+     * POST /admin/xp-jobs/{id}/cancel - Para o job depois do lote corrente (ADMIN)
+     */
+    @SecurityRequirement(name = "bearerAuth")
+    @PostMapping("/admin/xp-jobs/{id}/cancel")
+    public ResponseEntity<XpRecalcJobDTO> cancel(@PathVariable String id) {
+        return ResponseEntity.ok(xpRecalc.cancel(id));
+    }
+
+    /**
+     * POST /admin/xp-jobs/{id}/resume - Retoma um job FAILED/CANCELLED do checkpoint (ADMIN)
+     */
+    @SecurityRequirement(name = "bearerAuth")
+    @PostMapping("/admin/xp-jobs/{id}/resume")
+    public ResponseEntity<XpRecalcJobDTO> resume(@PathVariable String id) {
+        return ResponseEntity.ok(xpRecalc.resume(id));
+    }
+}
@@ -0,0 +1,47 @@
+package ai.startup.usuario.xp;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Job de recálculo de XP de todos os usuários.
+ *
+ * Percorre os usuários em ordem de _id; lastUserId é o checkpoint (tudo até ele já foi
+ * aplicado). A instância que executa mantém o lease em lockedUntil/leaseOwner: se ela cair,
+ * o lease vence e outra instância (ou a mesma após reiniciar) continua do checkpoint.
+ */
+@Data
+@NoArgsConstructor
+@Document("xp_recalc_jobs")
+public class XpRecalcJob {
+
+    public enum Status { RUNNING, COMPLETED, CANCELLED, FAILED }
+
+    @Id
+    private String id;
+    // no máximo um job RUNNING: o insert/retomada concorrente falha com chave duplicada
+    @Indexed(name = "one_running", unique = true, partialFilter = "{ 'status': 'RUNNING' }")
+    private Status status;
+    private String startedBy;        // id do admin; o job chama o serviço de questões em nome dele
+    private boolean cancelRequested;
+
+    private String lastUserId;       // checkpoint
+    private long processed;
+    private long updated;
+    private long failed;
+    private long total;              // estimativa no início
+    private long activeMs;           // tempo efetivamente rodando (base do throughput)
+
+    private String leaseOwner;
+    private Date lockedUntil;
+
+    private String lastError;
+    private Date startedAt;
+    private Date updatedAt;
+    private Date finishedAt;
+}
@@ -0,0 +1,32 @@
+package ai.startup.usuario.xp;
+
+import java.util.Date;
+
+/**
+ * Status de um job de recálculo de XP
+ */
+public record XpRecalcJobDTO(
+    String id,
+    String status,
+    boolean cancelRequested,
+    long processed,
+    long updated,
+    long failed,
+    long total,
+    double progressPercent,
+    double usersPerSecond,
+    String lastUserId,
+    String lastError,
+    Date startedAt,
+    Date updatedAt,
+    Date finishedAt
+) {
+    static XpRecalcJobDTO of(XpRecalcJob j) {
+        double progress = j.getTotal() > 0 ? Math.min(100.0, j.getProcessed() * 100.0 / j.getTotal()) : 0.0;
+        double rate = j.getActiveMs() > 0 ? j.getProcessed() * 1000.0 / j.getActiveMs() : 0.0;
+        return new XpRecalcJobDTO(j.getId(), j.getStatus() != null ? j.getStatus().name() : null,
+                j.isCancelRequested(), j.getProcessed(), j.getUpdated(), j.getFailed(), j.getTotal(),
+                progress, rate, j.getLastUserId(), j.getLastError(),
+                j.getStartedAt(), j.getUpdatedAt(), j.getFinishedAt());
+    }
+}
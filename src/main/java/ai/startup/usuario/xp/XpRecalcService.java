@@ -0,0 +1,480 @@
+package ai.startup.usuario.xp;
+
+import ai.startup.usuario.auth.JwtService;
+import ai.startup.usuario.clients.QuestaoClient;
+import ai.startup.usuario.metrics.MetricsSource;
+import ai.startup.usuario.ranking.LeaderboardService;
+import ai.startup.usuario.usuario.Usuario;
+import ai.startup.usuario.usuario.UsuarioCache;
+import com.mongodb.bulk.BulkWriteResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recálculo de XP de todos os usuários em background (xp_recalc_jobs).
+ *
+ * Lê os usuários em lotes por _id (só xp e streaks), chama o serviço de questões em
+ * paralelo em virtual threads com concorrência limitada e grava o lote com um bulkWrite
+ * não ordenado de $set condicionado ao xp lido (se um $inc da ingestão chegou no meio, o
+ * usuário é pulado e fica para o próximo recálculo). Depois de cada lote o checkpoint é salvo
+ * no job; se a instância cair, o lease vence e o job continua do último lote confirmado.
+ * Enquanto o lote roda, um heartbeat renova o lease a cada lease-ms/3.
+ *
+ * Só um job RUNNING existe por vez (índice único parcial em XpRecalcJob.status).
+ */
+@Service
+public class XpRecalcService implements MetricsSource {
+
+    private final MongoTemplate mongoTemplate;
+    private final QuestaoClient questaoClient;
+    private final JwtService jwt;
+    private final UsuarioCache usuarioCache;
+    private final LeaderboardService leaderboard;
+
+    private final int batchSize;
+    private final int concurrency;
+    private final long leaseMs;
+    private final int unavailableRetries;
+    private final long retryBackoffMs;
+
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder usersProcessed = new LongAdder();
+    private final LongAdder usersUpdated = new LongAdder();
+    private final LongAdder usersFailed = new LongAdder();
+    private final LongAdder usersConflicted = new LongAdder();
+
+    /** XP novo de um usuário cujo valor mudou */
+    private record Change(String userId, long oldXp, long newXp) {}
+
+    public XpRecalcService(MongoTemplate mongoTemplate,
+                           QuestaoClient questaoClient,
+                           JwtService jwt,
+                           UsuarioCache usuarioCache,
+                           LeaderboardService leaderboard,
+                           @Value("${xp.recalc.batch-size:200}") int batchSize,
+                           @Value("${xp.recalc.concurrency:8}") int concurrency,
+                           @Value("${xp.recalc.lease-ms:300000}") long leaseMs,
+                           @Value("${xp.recalc.unavailable-retries:3}") int unavailableRetries,
+                           @Value("${xp.recalc.retry-backoff-ms:1000}") long retryBackoffMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.questaoClient = questaoClient;
+        this.jwt = jwt;
+        this.usuarioCache = usuarioCache;
+        this.leaderboard = leaderboard;
+        this.batchSize = Math.max(1, batchSize);
+        this.concurrency = Math.max(1, concurrency);
+        this.leaseMs = leaseMs;
+        this.unavailableRetries = unavailableRetries;
+        this.retryBackoffMs = retryBackoffMs;
+    }
+
+    /**
+     * Cria o job e começa a executá-lo nesta instância. Só um job roda por vez.
+     */
+    public XpRecalcJobDTO start(String adminId) {
+        XpRecalcJob active = mongoTemplate.findOne(
+                new Query(Criteria.where("status").is(XpRecalcJob.Status.RUNNING)), XpRecalcJob.class);
+        if (active != null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Já existe um recálculo em andamento: " + active.getId());
+        }
+
+        Date now = new Date();
+        XpRecalcJob job = new XpRecalcJob();
+        job.setStatus(XpRecalcJob.Status.RUNNING);
+        job.setStartedBy(adminId);
+        job.setTotal(mongoTemplate.estimatedCount(Usuario.class));
+        job.setLockedUntil(new Date(0));
+        job.setStartedAt(now);
+        job.setUpdatedAt(now);
+        try {
+            job = mongoTemplate.insert(job);
+        } catch (DuplicateKeyException e) {
+            // outro admin/instância criou um job entre a checagem e o insert
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Já existe um recálculo em andamento");
+        }
+
+        System.out.println("[XP Recalc] Job " + job.getId() + " criado (~" + job.getTotal() + " usuários)");
+        claimAndRun(job.getId());
+        return status(job.getId());
+    }
+
+    public XpRecalcJobDTO status(String jobId) {
+        XpRecalcJob job = mongoTemplate.findById(jobId, XpRecalcJob.class);
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Job não encontrado");
+        }
+        return XpRecalcJobDTO.of(job);
+    }
+
+    /**
+     * Pede o cancelamento; o job para depois do lote corrente (que é gravado normalmente).
+     * Se nenhuma instância estiver com o job, cancela direto.
+     */
+    public XpRecalcJobDTO cancel(String jobId) {
+        Date now = new Date();
+        Query orphan = new Query(Criteria.where("_id").is(jobId)
+                .and("status").is(XpRecalcJob.Status.RUNNING)
+                .and("lockedUntil").lt(now));
+        XpRecalcJob job = mongoTemplate.findAndModify(orphan, new Update()
+                .set("status", XpRecalcJob.Status.CANCELLED)
+                .set("cancelRequested", true)
+                .set("finishedAt", now)
+                .set("updatedAt", now), XpRecalcJob.class);
+        if (job == null) {
+            Query runningJob = new Query(Criteria.where("_id").is(jobId).and("status").is(XpRecalcJob.Status.RUNNING));
+            job = mongoTemplate.findAndModify(runningJob, new Update()
+                    .set("cancelRequested", true)
+                    .set("updatedAt", now), XpRecalcJob.class);
+        }
+        if (job == null) {
+            status(jobId); // 404 se não existir
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Job não está em execução");
+        }
+        System.out.println("[XP Recalc] Cancelamento solicitado para o job " + jobId);
+        return status(jobId);
+    }
+
+    /**
+     * Retoma um job FAILED/CANCELLED a partir do checkpoint
+     */
+    public XpRecalcJobDTO resume(String jobId) {
+        XpRecalcJob active = mongoTemplate.findOne(new Query(Criteria.where("status").is(XpRecalcJob.Status.RUNNING)
+                .and("_id").ne(jobId)), XpRecalcJob.class);
+        if (active != null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Já existe um recálculo em andamento: " + active.getId());
+        }
+
+        Query stopped = new Query(Criteria.where("_id").is(jobId)
+                .and("status").in(XpRecalcJob.Status.FAILED, XpRecalcJob.Status.CANCELLED));
+        XpRecalcJob job;
+        try {
+            job = mongoTemplate.findAndModify(stopped, new Update()
+                    .set("status", XpRecalcJob.Status.RUNNING)
+                    .set("cancelRequested", false)
+                    .set("lockedUntil", new Date(0))
+                    .set("updatedAt", new Date())
+                    .unset("finishedAt")
+                    .unset("lastError"), XpRecalcJob.class);
+        } catch (DuplicateKeyException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Já existe um recálculo em andamento");
+        }
+        if (job == null) {
+            status(jobId); // 404 se não existir
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Só jobs FAILED ou CANCELLED podem ser retomados");
+        }
+        System.out.println("[XP Recalc] Retomando job " + jobId + " a partir de " + job.getLastUserId());
+        claimAndRun(jobId);
+        return status(jobId);
+    }
+
+    /**
+     * Assume jobs RUNNING cujo lease venceu (instância que executava caiu ou reiniciou)
+     */
+    @Scheduled(fixedDelayString = "${xp.recalc.poll-ms:30000}", initialDelayString = "${xp.recalc.poll-ms:30000}")
+    public void resumeOrphans() {
+        try {
+            Query orphans = new Query(Criteria.where("status").is(XpRecalcJob.Status.RUNNING)
+                    .and("lockedUntil").lt(new Date()));
+            for (XpRecalcJob job : mongoTemplate.find(orphans, XpRecalcJob.class)) {
+                if (claimAndRun(job.getId())) {
+                    System.out.println("[XP Recalc] Job " + job.getId() + " sem dono, continuando de " + job.getLastUserId());
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("[XP Recalc] Falha ao procurar jobs órfãos: " + e.getMessage());
+        }
+    }
+
+    /** Pega o lease do job e executa em uma virtual thread; false se outra instância já pegou */
+    private boolean claimAndRun(String jobId) {
+        Date now = new Date();
+        String owner = nodeId + ":" + UUID.randomUUID().toString().substring(0, 8);
+        Query free = new Query(Criteria.where("_id").is(jobId)
+                .and("status").is(XpRecalcJob.Status.RUNNING)
+                .and("lockedUntil").lt(now));
+        XpRecalcJob job = mongoTemplate.findAndModify(free, new Update()
+                        .set("leaseOwner", owner)
+                        .set("lockedUntil", new Date(now.getTime() + leaseMs)),
+                FindAndModifyOptions.options().returnNew(true), XpRecalcJob.class);
+        if (job == null) return false;
+        Thread.ofVirtual().name("xp-recalc-" + jobId).start(() -> run(job));
+        return true;
+    }
+
+    private void run(XpRecalcJob job) {
+        String jobId = job.getId();
+        String owner = job.getLeaseOwner();
+        String cursor = job.getLastUserId();
+        AtomicBoolean leaseLost = new AtomicBoolean();
+        Thread heartbeat = startHeartbeat(jobId, owner, leaseLost);
+        running.incrementAndGet();
+        try {
+            while (true) {
+                long started = System.nanoTime();
+                List<Usuario> batch = nextBatch(cursor);
+                if (batch.isEmpty()) {
+                    finish(jobId, owner, XpRecalcJob.Status.COMPLETED, null);
+                    System.out.println("[XP Recalc] Job " + jobId + " concluído");
+                    return;
+                }
+
+                String bearer = bearerFor(job.getStartedBy());
+                List<Change> changes = new ArrayList<>();
+                int failed = recalcBatch(batch, bearer, changes);
+                if (leaseLost.get()) {
+                    System.err.println("[XP Recalc] Job " + jobId + ": lease perdido durante o lote, descartando");
+                    return;
+                }
+                int updated = apply(changes);
+                cursor = batch.get(batch.size() - 1).getId();
+
+                long elapsedMs = (System.nanoTime() - started) / 1_000_000L;
+                XpRecalcJob after = checkpoint(jobId, owner, cursor, batch.size(), updated, failed, elapsedMs);
+                batches.increment();
+                usersProcessed.add(batch.size());
+                usersUpdated.add(updated);
+                usersFailed.add(failed);
+
+                if (after == null) {
+                    System.err.println("[XP Recalc] Job " + jobId + ": lease perdido, parando nesta instância");
+                    return;
+                }
+                if (after.isCancelRequested()) {
+                    finish(jobId, owner, XpRecalcJob.Status.CANCELLED, null);
+                    System.out.println("[XP Recalc] Job " + jobId + " cancelado em " + cursor);
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            // lote corrente não entra no checkpoint; ao retomar ele é refeito ($set é idempotente)
+            System.err.println("[XP Recalc] Job " + jobId + " falhou: " + e.getMessage());
+            finish(jobId, owner, XpRecalcJob.Status.FAILED, e.getMessage());
+        } finally {
+            heartbeat.interrupt();
+            running.decrementAndGet();
+        }
+    }
+
+    /**
+     * Renova o lease enquanto o job roda nesta instância; um lote lento (muitos retries no
+     * serviço de questões) não pode deixar o lease vencer e outra instância assumir em paralelo
+     */
+    private Thread startHeartbeat(String jobId, String owner, AtomicBoolean leaseLost) {
+        long every = Math.max(1, leaseMs / 3);
+        return Thread.ofVirtual().name("xp-recalc-lease-" + jobId).start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(every);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    Query owned = new Query(Criteria.where("_id").is(jobId)
+                            .and("status").is(XpRecalcJob.Status.RUNNING)
+                            .and("leaseOwner").is(owner));
+                    long matched = mongoTemplate.updateFirst(owned, new Update()
+                            .set("lockedUntil", new Date(System.currentTimeMillis() + leaseMs)), XpRecalcJob.class)
+                            .getMatchedCount();
+                    if (matched == 0) {
+                        leaseLost.set(true);
+                        return;
+                    }
+                } catch (Exception e) {
+                    // tenta de novo no próximo intervalo; o lease ainda tem 2/3 de folga
+                    System.err.println("[XP Recalc] Falha ao renovar lease do job " + jobId + ": " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private List<Usuario> nextBatch(String cursor) {
+        Query query = new Query();
+        if (cursor != null) {
+            query.addCriteria(Criteria.where("_id").gt(cursor));
+        }
+        query.with(Sort.by(Sort.Direction.ASC, "_id")).limit(batchSize);
+        query.fields().include("xp").include("streaks");
+        return mongoTemplate.find(query, Usuario.class);
+    }
+
+    /** Token novo por lote em nome do admin que criou o job (o job pode durar mais que um token) */
+    private String bearerFor(String adminId) {
+        return usuarioCache.findById(adminId)
+                .map(jwt::gerarToken)
+                .orElseThrow(() -> new IllegalStateException("Usuário que iniciou o job não existe mais"));
+    }
+
+    /**
+     * Calcula o XP do lote em paralelo; preenche changes com os que mudaram e devolve
+     * quantos falharam. Se o serviço de questões estiver indisponível, aborta o lote.
+     */
+    private int recalcBatch(List<Usuario> batch, String bearer, List<Change> changes) throws InterruptedException {
+        Semaphore permits = new Semaphore(concurrency);
+        List<Future<Long>> futures = new ArrayList<>(batch.size());
+        try (ExecutorService exec = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Usuario u : batch) {
+                futures.add(exec.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return computeXp(bearer, u.getId());
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        } // close() espera todas as tarefas
+
+        int failed = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Usuario u = batch.get(i);
+            try {
+                long newXp = futures.get(i).get();
+                long oldXp = u.getXp() != null ? u.getXp() : 0L;
+                if (newXp != oldXp) {
+                    changes.add(new Change(u.getId(), oldXp, newXp));
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof ResponseStatusException rse
+                        && rse.getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE) {
+                    throw new IllegalStateException("Serviço de questões indisponível: " + rse.getReason());
+                }
+                failed++;
+                System.err.println("[XP Recalc] Erro ao recalcular XP de " + u.getId() + ": " + cause.getMessage());
+            }
+        }
+        return failed;
+    }
+
+    /** XP pelas questões corretas; 503 (circuito aberto/bulkhead cheio) é tentado de novo com backoff */
+    private long computeXp(String bearer, String userId) throws InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return questaoClient.countCorrectAnswers(bearer, userId) * XpEventService.XP_PER_CORRECT;
+            } catch (ResponseStatusException e) {
+                if (e.getStatusCode() != HttpStatus.SERVICE_UNAVAILABLE || attempt >= unavailableRetries) throw e;
+                Thread.sleep(retryBackoffMs << attempt);
+            }
+        }
+    }
+
+    /**
+     * $set condicionado ao xp lido no início do lote: um $inc da ingestão que chegou durante
+     * o cálculo não é sobrescrito (o usuário fica como está até o próximo recálculo).
+     * Devolve quantos foram gravados.
+     */
+    private int apply(List<Change> changes) {
+        if (changes.isEmpty()) return 0;
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Usuario.class);
+        List<String> ids = new ArrayList<>(changes.size());
+        for (Change c : changes) {
+            Criteria unchanged = c.oldXp() == 0L
+                    ? Criteria.where("xp").in(0L, null)
+                    : Criteria.where("xp").is(c.oldXp());
+            bulk.updateOne(new Query(Criteria.where("_id").is(c.userId()).andOperator(unchanged)),
+                    new Update().set("xp", c.newXp()));
+            ids.add(c.userId());
+        }
+        BulkWriteResult result = bulk.execute();
+        int conflicts = changes.size() - result.getMatchedCount();
+        if (conflicts > 0) {
+            usersConflicted.add(conflicts);
+            System.out.println("[XP Recalc] " + conflicts + " usuários mudaram durante o lote, pulados");
+        }
+
+        // ranking com os valores atuais (xp e streaks relidos), não com o que o lote leu
+        Query fresh = new Query(Criteria.where("_id").in(ids));
+        fresh.fields().include("xp").include("streaks");
+        for (Usuario u : mongoTemplate.find(fresh, Usuario.class)) {
+            usuarioCache.invalidate(u.getId());
+            leaderboard.update(u.getId(), u.getXp() != null ? u.getXp() : 0L, u.getStreaks() != null ? u.getStreaks() : 0L);
+        }
+        return result.getMatchedCount();
+    }
+
+    /** Salva o checkpoint e renova o lease; null se o lease não é mais desta execução */
+    private XpRecalcJob checkpoint(String jobId, String owner, String cursor,
+                                   int processed, int updated, int failed, long elapsedMs) {
+        Date now = new Date();
+        Query owned = new Query(Criteria.where("_id").is(jobId)
+                .and("status").is(XpRecalcJob.Status.RUNNING)
+                .and("leaseOwner").is(owner));
+        Update update = new Update()
+                .set("lastUserId", cursor)
+                .inc("processed", processed)
+                .inc("updated", updated)
+                .inc("failed", failed)
+                .inc("activeMs", elapsedMs)
+                .set("lockedUntil", new Date(now.getTime() + leaseMs))
+                .set("updatedAt", now);
+        return mongoTemplate.findAndModify(owned, update,
+                FindAndModifyOptions.options().returnNew(true), XpRecalcJob.class);
+    }
+
+    private void finish(String jobId, String owner, XpRecalcJob.Status status, String error) {
+        Date now = new Date();
+        Query owned = new Query(Criteria.where("_id").is(jobId)
+                .and("status").is(XpRecalcJob.Status.RUNNING)
+                .and("leaseOwner").is(owner));
+        Update update = new Update()
+                .set("status", status)
+                .set("finishedAt", now)
+                .set("updatedAt", now)
+                .unset("leaseOwner");
+        if (error != null) update.set("lastError", error);
+        try {
+            mongoTemplate.updateFirst(owned, update, XpRecalcJob.class);
+        } catch (Exception e) {
+            // fica RUNNING; o lease vence e o job é retomado do checkpoint
+            System.err.println("[XP Recalc] Falha ao finalizar job " + jobId + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "xpRecalc";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("runningHere", running.get());
+        m.put("batches", batches.sum());
+        m.put("processed", usersProcessed.sum());
+        m.put("updated", usersUpdated.sum());
+        m.put("failed", usersFailed.sum());
+        m.put("conflicts", usersConflicted.sum());
+        return m;
+    }
+}
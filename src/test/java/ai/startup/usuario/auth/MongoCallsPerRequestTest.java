@@ -0,0 +1,206 @@
+package ai.startup.usuario.auth;
+
+import ai.startup.usuario.email.EmailService;
+import ai.startup.usuario.ranking.LeaderboardService;
+import ai.startup.usuario.usuario.Usuario;
+import ai.startup.usuario.usuario.UsuarioRepository;
+import ai.startup.usuario.wins.WinsLedger;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.BsonValue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Comandos enviados ao Mongo por request nas rotas que usam o usuário autenticado.
+ * O id vem do JWT e o usuário é carregado no máximo uma vez (CurrentUser); nenhuma
+ * rota volta a procurar o usuário por email.
+ *
+ * Só contam comandos da thread do request (o MockMvc executa na thread do teste):
+ * workers em background (ranking, ledger, webhooks) não entram na conta.
+ */
+@Testcontainers
+@SpringBootTest(properties = {
+        "jwt.secret=bW9uZ28tY2FsbHMtcGVyLXJlcXVlc3QtdGVzdC1rZXkhIQ==",
+        "stripe.secret.key=sk_test_dummy",
+        "stripe.webhook.secret=whsec_dummy",
+        "sendgrid.api.key=SG.dummy",
+        "sendgrid.from.email=noreply@example.com",
+        "sendgrid.from.name=Test",
+        "support.notification.email=support@example.com",
+        "cache.bus.enabled=false"
+})
+@AutoConfigureMockMvc
+class MongoCallsPerRequestTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    @TestConfiguration
+    static class RecordingConfig {
+        @Bean
+        CommandRecorder commandRecorder() {
+            return new CommandRecorder();
+        }
+
+        @Bean
+        MongoClientSettingsBuilderCustomizer recordCommands(CommandRecorder recorder) {
+            return settings -> settings.addCommandListener(recorder);
+        }
+    }
+
+    /** Comando (nome, coleção) disparado pela thread que está gravando */
+    record Call(String command, String collection) {}
+
+    static class CommandRecorder implements CommandListener {
+        private final List<Call> calls = new CopyOnWriteArrayList<>();
+        private volatile Thread recording;
+
+        @Override
+        public void commandStarted(CommandStartedEvent event) {
+            if (Thread.currentThread() != recording) return;
+            BsonValue target = event.getCommand().get(event.getCommandName());
+            calls.add(new Call(event.getCommandName(), target != null && target.isString() ? target.asString().getValue() : null));
+        }
+    }
+
+    @MockitoBean
+    private EmailService emailService; // sem SendGrid no teste
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private CommandRecorder recorder;
+
+    @Autowired
+    private UsuarioRepository repo;
+
+    @Autowired
+    private JwtService jwt;
+
+    @Autowired
+    private LeaderboardService leaderboard;
+
+    @Autowired
+    private WinsLedger ledger;
+
+    private Usuario user;
+    private String bearer;
+
+    @BeforeEach
+    void createUser() {
+        Usuario u = new Usuario();
+        u.setEmail("calls-" + UUID.randomUUID() + "@example.com");
+        u.setNome("Ana");
+        u.setSobrenome("Souza");
+        u.setPermissao("USER");
+        u.setWins(500L);
+        u.setXp(120L);
+        u.setStreaks(3L);
+        u.setIsPremium(false);
+        user = repo.insert(u);
+        ledger.seed(user.getId()); // snapshot do ledger: uma vez por usuário, fora da medida
+        bearer = "Bearer " + jwt.gerarToken(user);
+    }
+
+    /** Executa o request e devolve os comandos que ele mandou ao Mongo */
+    private List<Call> calls(RequestBuilder request, int expectedStatus) throws Exception {
+        recorder.calls.clear();
+        recorder.recording = Thread.currentThread();
+        try {
+            mvc.perform(request).andExpect(status().is(expectedStatus));
+        } finally {
+            recorder.recording = null;
+        }
+        return List.copyOf(recorder.calls);
+    }
+
+    private static List<Call> on(List<Call> calls, String collection) {
+        return calls.stream().filter(c -> collection.equals(c.collection())).toList();
+    }
+
+    @Test
+    void meTouchesTheStreakOnceThenServesFromCache() throws Exception {
+        List<Call> first = calls(get("/users/me").header("Authorization", bearer), 200);
+        assertThat(first).as("primeiro /users/me do dia").containsExactly(new Call("findAndModify", "usuarios"));
+
+        List<Call> second = calls(get("/users/me").header("Authorization", bearer), 200);
+        assertThat(second).as("segundo /users/me do dia").isEmpty();
+    }
+
+    @Test
+    void supportMessageLoadsTheUserOnce() throws Exception {
+        List<Call> calls = calls(post("/support/messages")
+                .header("Authorization", bearer)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"message\": \"não consigo abrir o simulado\"}"), 200);
+
+        assertThat(calls).containsExactly(
+                new Call("find", "usuarios"),              // CurrentUser.get(), projetado
+                new Call("insert", "support_messages"));
+    }
+
+    @Test
+    void myRankTakesTheIdFromTheToken() throws Exception {
+        await().atMost(Duration.ofSeconds(30)).until(leaderboard::isReady);
+        leaderboard.update(user);
+
+        List<Call> calls = calls(get("/ranking/xp/me").header("Authorization", bearer), 200);
+        // posição vem do leaderboard em memória; só os nomes dos vizinhos saem do Mongo
+        assertThat(calls).containsExactly(new Call("find", "usuarios"));
+    }
+
+    @Test
+    void spendWinsIsASingleConditionalUpdateOnTheUser() throws Exception {
+        List<Call> calls = calls(post("/users/me/spend-wins").param("amount", "10")
+                .header("Authorization", bearer), 200);
+
+        // o resto é o ledger de wins; o usuário não é lido antes do débito
+        assertThat(on(calls, "usuarios")).containsExactly(new Call("findAndModify", "usuarios"));
+    }
+
+    @Test
+    void entitlementsAreLoadedOnceAndThenCached() throws Exception {
+        List<Call> first = calls(get("/users/me/entitlements").header("Authorization", bearer), 200);
+        assertThat(first).containsExactly(new Call("find", "usuarios"));
+
+        List<Call> second = calls(get("/users/me/entitlements").header("Authorization", bearer), 200);
+        assertThat(second).isEmpty();
+    }
+
+    @Test
+    void upgradePremiumChecksEntitlementAndDebitsWithoutLookupByEmail() throws Exception {
+        List<Call> calls = calls(post("/users/me/upgrade-premium").header("Authorization", bearer), 200);
+
+        assertThat(on(calls, "usuarios")).containsExactly(
+                new Call("find", "usuarios"),              // EntitlementCache (isPremium, entitlementVersion)
+                new Call("findAndModify", "usuarios"));    // guarda + débito + ativação
+    }
+}
@@ -0,0 +1,84 @@
+package ai.startup.usuario.clients;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private static CircuitBreaker breaker(long openMs) {
+        // janela 4, abre com 50% após 4 chamadas, 2 chamadas de teste no half-open
+        return new CircuitBreaker("test", 4, 4, 50, openMs, 2);
+    }
+
+    private static void trip(CircuitBreaker b) {
+        for (int i = 0; i < 4; i++) {
+            b.onFailure(b.tryAcquire());
+        }
+    }
+
+    @Test
+    void aSlowCallFromBeforeTheTripDoesNotCountAsAProbe() throws InterruptedException {
+        CircuitBreaker b = breaker(0);
+        long slow = b.tryAcquire();       // admitida em CLOSED, ainda em andamento
+        trip(b);
+
+        long probe = b.tryAcquire();      // openMs = 0: já vai para HALF_OPEN
+        assertThat(probe).isGreaterThan(slow);
+
+        b.onSuccess(slow);                // termina agora: resultado de outro epoch
+        assertThat(b.snapshot().get("state")).isEqualTo("HALF_OPEN");
+        assertThat(b.snapshot().get("staleResults")).isEqualTo(1L);
+
+        long second = b.tryAcquire();     // a vaga de teste não foi liberada pela chamada antiga
+        assertThat(b.tryAcquire()).isEqualTo(-1);
+        b.onSuccess(probe);
+        b.onSuccess(second);
+        assertThat(b.snapshot().get("state")).isEqualTo("CLOSED");
+    }
+
+    @Test
+    void aStaleFailureDoesNotReopenAClosedCircuit() {
+        CircuitBreaker b = breaker(0);
+        long old = b.tryAcquire();
+        trip(b);
+        b.onSuccess(b.tryAcquire());
+        b.onSuccess(b.tryAcquire());
+        assertThat(b.snapshot().get("state")).isEqualTo("CLOSED");
+
+        b.onFailure(old);
+        b.release(old);
+
+        Map<String, Object> s = b.snapshot();
+        assertThat(s.get("state")).isEqualTo("CLOSED");
+        assertThat(s.get("windowCalls")).isEqualTo(0);
+        assertThat(s.get("staleResults")).isEqualTo(2L);
+    }
+
+    @Test
+    void releaseFreesAHalfOpenSlotWithoutRecordingAResult() {
+        CircuitBreaker b = breaker(0);
+        trip(b);
+
+        long p1 = b.tryAcquire();
+        long p2 = b.tryAcquire();
+        assertThat(b.tryAcquire()).isEqualTo(-1);
+
+        b.release(p1);                    // ex: 4xx ou bulkhead cheio
+        long p3 = b.tryAcquire();
+        assertThat(p3).isEqualTo(p1);
+        b.onSuccess(p2);
+        b.onSuccess(p3);
+        assertThat(b.snapshot().get("state")).isEqualTo("CLOSED");
+    }
+
+    @Test
+    void staysOpenUntilTheOpenPeriodEnds() {
+        CircuitBreaker b = breaker(60_000);
+        trip(b);
+        assertThat(b.tryAcquire()).isEqualTo(-1);
+        assertThat(b.snapshot().get("rejected")).isEqualTo(1L);
+    }
+}
@@ -0,0 +1,108 @@
+package ai.startup.usuario.clients;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contagem de questões corretas: leitura em streaming (QuestaoClient.countCorrect) x
+ * materializar a resposta inteira em List&lt;Map&gt; e filtrar (implementação anterior).
+ * Payloads sintéticos de 10k e 100k questões no formato do serviço de questões.
+ *
+ * Rodar pelo main desta classe (classpath de teste); o profiler gc mostra a alocação por operação.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g"})
+public class CountCorrectBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String[] OPTIONS = {"A", "B", "C", "D"};
+
+    @Param({"10000", "100000"})
+    int questions;
+
+    byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        payload = payload(questions, new Random(42));
+    }
+
+    /** Array de questões com os campos reais (texto, alternativas aninhadas, metadados) */
+    static byte[] payload(int n, Random rnd) {
+        StringBuilder sb = new StringBuilder(n * 400);
+        sb.append('[');
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append(',');
+            String correct = OPTIONS[rnd.nextInt(4)];
+            String marked = rnd.nextInt(10) < 6 ? correct : OPTIONS[rnd.nextInt(4)];
+            sb.append("{\"_id\":\"q").append(i).append('"')
+              .append(",\"id_usuario\":\"665f1c2e9a1b2c3d4e5f6a7b\"")
+              .append(",\"topic\":\"algebra\",\"subskill\":\"linear-equations\",\"difficulty\":\"medium\"")
+              .append(",\"enunciado\":\"If 3x + 7 = 22, what is the value of x? Choose the best answer below.\"")
+              .append(",\"alternativas\":{\"A\":\"3\",\"B\":\"5\",\"C\":\"7\",\"D\":\"15\"}")
+              .append(",\"correct_option\":\"").append(correct).append('"')
+              .append(",\"alternativa_marcada\":").append(rnd.nextInt(20) == 0 ? "null" : "\"" + marked.toLowerCase() + "\"")
+              .append(",\"tempo_resposta_s\":").append(20 + rnd.nextInt(100))
+              .append(",\"tags\":[\"sat\",\"math\"]}");
+        }
+        sb.append(']');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Como era antes: lista inteira em memória e filtro sobre os mapas */
+    static long countMaterialized(byte[] body) throws IOException {
+        List<Map<String, Object>> questoes = MAPPER.readValue(body, new TypeReference<>() {});
+        return questoes.stream()
+            .filter(q -> {
+                Object marcada = q.get("alternativa_marcada");
+                Object correta = q.get("correct_option");
+                if (marcada == null || correta == null) return false;
+                return String.valueOf(marcada).trim().toUpperCase().equals(String.valueOf(correta).trim().toUpperCase());
+            })
+            .count();
+    }
+
+    @Benchmark
+    public long streaming() throws IOException {
+        return QuestaoClient.countCorrect(new ByteArrayInputStream(payload));
+    }
+
+    @Benchmark
+    public long materialized() throws IOException {
+        return countMaterialized(payload);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CountCorrectBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
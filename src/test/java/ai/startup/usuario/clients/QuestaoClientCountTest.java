@@ -0,0 +1,56 @@
+package ai.startup.usuario.clients;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuestaoClientCountTest {
+
+    private static long count(String json) throws IOException {
+        return QuestaoClient.countCorrect(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void countsOnlyMatchingAnswersIgnoringCaseAndSpaces() throws IOException {
+        String json = """
+            [
+              {"alternativa_marcada": "a", "correct_option": "A"},
+              {"alternativa_marcada": " B ", "correct_option": "b"},
+              {"alternativa_marcada": "C", "correct_option": "D"},
+              {"alternativa_marcada": null, "correct_option": "A"},
+              {"correct_option": "A"}
+            ]""";
+        assertThat(count(json)).isEqualTo(2);
+    }
+
+    @Test
+    void skipsNestedValuesAndNonObjectElements() throws IOException {
+        String json = """
+            [
+              {"alternativas": {"alternativa_marcada": "A", "correct_option": "A"},
+               "alternativa_marcada": "B", "correct_option": "C"},
+              {"tags": ["correct_option", "A"], "alternativa_marcada": "D", "correct_option": "d"},
+              42, "x", [1, 2], null
+            ]""";
+        assertThat(count(json)).isEqualTo(1);
+    }
+
+    @Test
+    void emptyOrNonArrayBodiesCountZero() throws IOException {
+        assertThat(count("")).isZero();
+        assertThat(count("[]")).isZero();
+        assertThat(count("{\"alternativa_marcada\": \"A\", \"correct_option\": \"A\"}")).isZero();
+    }
+
+    @Test
+    void matchesTheMaterializedCountOnASyntheticPayload() throws IOException {
+        byte[] payload = CountCorrectBenchmark.payload(10_000, new Random(7));
+        assertThat(QuestaoClient.countCorrect(new ByteArrayInputStream(payload)))
+                .isEqualTo(CountCorrectBenchmark.countMaterialized(payload));
+    }
+}
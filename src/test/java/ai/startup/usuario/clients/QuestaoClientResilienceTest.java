@@ -0,0 +1,233 @@
+package ai.startup.usuario.clients;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * QuestaoClient + Downstreams contra um serviço de questões falso (HttpServer do JDK) que
+ * injeta latência, 5xx e 4xx: abertura do circuito, falha rápida, half-open, bulkhead e métricas.
+ */
+class QuestaoClientResilienceTest {
+
+    private static final String ONE_CORRECT = """
+        [{"alternativa_marcada": "A", "correct_option": "A"},
+         {"alternativa_marcada": "B", "correct_option": "C"}]""";
+
+    private static final long OPEN_MS = 300;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private final AtomicInteger hits = new AtomicInteger();
+
+    // comportamento atual do stub
+    private volatile int status = 200;
+    private volatile long delayMs = 0;
+    private volatile CountDownLatch hold;     // se não nulo, segura a resposta até o countDown
+    private volatile CountDownLatch arrived;  // sinaliza cada request recebido
+
+    private OutboundHttp http;
+    private Downstreams downstreams;
+    private QuestaoClient client;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.createContext("/questoes/by-usuario/", this::handle);
+        server.start();
+
+        HttpClientProperties.Target t = new HttpClientProperties.Target();
+        t.setReadTimeoutMs(300);
+        t.setTotalTimeoutMs(1_000);
+        t.setMaxConnections(10);
+        t.setMaxConcurrentCalls(2);
+        t.setBreakerWindowSize(4);
+        t.setBreakerMinimumCalls(4);
+        t.setBreakerFailureRate(50);
+        t.setBreakerOpenMs(OPEN_MS);
+        t.setBreakerHalfOpenCalls(2);
+        HttpClientProperties props = new HttpClientProperties();
+        props.getTargets().put("questao", t);
+
+        http = new OutboundHttp(props);
+        downstreams = new Downstreams(props);
+        client = new QuestaoClient("http://127.0.0.1:" + server.getAddress().getPort(), http, downstreams);
+    }
+
+    @AfterEach
+    void stop() {
+        CountDownLatch h = hold;
+        if (h != null) h.countDown();
+        http.close();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        hits.incrementAndGet();
+        try (exchange) {
+            CountDownLatch a = arrived;
+            if (a != null) a.countDown();
+            CountDownLatch h = hold;
+            if (h != null) h.await(5, TimeUnit.SECONDS);
+            if (delayMs > 0) Thread.sleep(delayMs);
+
+            byte[] body = (status == 200 ? ONE_CORRECT : "{\"error\": \"stub\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ignored) {
+            // cliente desistiu (timeout): nada a responder
+        }
+    }
+
+    private long count() {
+        return client.countCorrectAnswers("Bearer t", "u1");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> stats() {
+        return (Map<String, Object>) downstreams.stats().get("questao");
+    }
+
+    @SuppressWarnings("unchecked")
+    private long transitions(String key) {
+        return ((Map<String, Long>) stats().get("transitions")).get(key);
+    }
+
+    private void tripWithServerErrors() {
+        status = 500;
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(this::count).isInstanceOf(HttpServerErrorException.class);
+        }
+        assertThat(stats().get("state")).isEqualTo("OPEN");
+    }
+
+    @Test
+    void serverErrorsOpenTheCircuitAndCallsFailFastWithoutReachingTheServer() {
+        tripWithServerErrors();
+        int before = hits.get();
+
+        for (int i = 0; i < 10; i++) {
+            assertThatThrownBy(this::count)
+                    .isInstanceOfSatisfying(ResponseStatusException.class,
+                            e -> assertThat(e.getStatusCode().value()).isEqualTo(503));
+        }
+
+        assertThat(hits.get()).isEqualTo(before);
+        assertThat(stats().get("rejected")).isEqualTo(10L);
+        assertThat(transitions("CLOSED->OPEN")).isEqualTo(1);
+    }
+
+    @Test
+    void timeoutsCountAsFailures() {
+        delayMs = 800; // acima do read timeout de 300 ms
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(this::count).isInstanceOf(ResourceAccessException.class);
+        }
+        assertThat(stats().get("state")).isEqualTo("OPEN");
+    }
+
+    @Test
+    void successfulProbesCloseTheCircuitAfterTheOpenPeriod() throws InterruptedException {
+        tripWithServerErrors();
+        status = 200;
+        Thread.sleep(OPEN_MS + 100);
+
+        assertThat(count()).isEqualTo(1);
+        assertThat(stats().get("state")).isEqualTo("HALF_OPEN");
+        assertThat(count()).isEqualTo(1);
+
+        assertThat(stats().get("state")).isEqualTo("CLOSED");
+        assertThat(transitions("OPEN->HALF_OPEN")).isEqualTo(1);
+        assertThat(transitions("HALF_OPEN->CLOSED")).isEqualTo(1);
+        assertThat(count()).isEqualTo(1);
+    }
+
+    @Test
+    void aFailedProbeReopensTheCircuit() throws InterruptedException {
+        tripWithServerErrors();
+        Thread.sleep(OPEN_MS + 100);
+
+        assertThatThrownBy(this::count).isInstanceOf(HttpServerErrorException.class);
+        assertThat(stats().get("state")).isEqualTo("OPEN");
+        assertThat(transitions("HALF_OPEN->OPEN")).isEqualTo(1);
+
+        int before = hits.get();
+        assertThatThrownBy(this::count).isInstanceOf(ResponseStatusException.class);
+        assertThat(hits.get()).isEqualTo(before);
+    }
+
+    @Test
+    void clientErrorsDoNotCountButTooManyRequestsDoes() {
+        status = 404;
+        for (int i = 0; i < 10; i++) {
+            assertThatThrownBy(this::count).isInstanceOf(HttpClientErrorException.NotFound.class);
+        }
+        assertThat(stats().get("state")).isEqualTo("CLOSED");
+        assertThat(stats().get("windowCalls")).isEqualTo(0);
+
+        status = 429;
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(this::count).isInstanceOf(HttpClientErrorException.TooManyRequests.class);
+        }
+        assertThat(stats().get("state")).isEqualTo("OPEN");
+    }
+
+    @Test
+    void bulkheadRejectsCallsBeyondTheConcurrencyLimit() throws Exception {
+        hold = new CountDownLatch(1);
+        arrived = new CountDownLatch(2);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<Long> a = callers.submit(this::count);
+            Future<Long> b = callers.submit(this::count);
+            assertThat(arrived.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(stats().get("inFlight")).isEqualTo(2);
+
+            assertThatThrownBy(this::count)
+                    .isInstanceOfSatisfying(ResponseStatusException.class,
+                            e -> assertThat(e.getReason()).contains("sobrecarregado"));
+            assertThat(hits.get()).isEqualTo(2);
+
+            hold.countDown();
+            assertThat(a.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+            assertThat(b.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        } finally {
+            callers.shutdownNow();
+        }
+
+        Map<String, Object> s = stats();
+        assertThat(s.get("bulkheadRejected")).isEqualTo(1L);
+        assertThat(s.get("inFlight")).isEqualTo(0);
+        assertThat(s.get("windowCalls")).isEqualTo(2); // a rejeitada não entra na janela
+        assertThat(s.get("state")).isEqualTo("CLOSED");
+    }
+}
@@ -0,0 +1,192 @@
+package ai.startup.usuario.payment;
+
+import ai.startup.usuario.auth.EntitlementCache;
+import ai.startup.usuario.cache.InvalidationBus;
+import ai.startup.usuario.usuario.Usuario;
+import ai.startup.usuario.usuario.UsuarioCache;
+import ai.startup.usuario.usuario.UsuarioRepository;
+import ai.startup.usuario.wins.WinsLedger;
+import ai.startup.usuario.wins.WinsLedgerEntry;
+import ai.startup.usuario.wins.WinsService;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.stripe.model.checkout.Session;
+import org.bson.BsonValue;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.TestPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * O claim em processed_payments é a única guarda de idempotência: entregas simultâneas da
+ * mesma sessão creditam uma vez, e cada pagamento custa o claim + um $inc no usuário
+ * + a entrada do ledger.
+ */
+@Testcontainers
+@DataMongoTest
+@Import({PaymentService.class, WinsService.class, WinsLedger.class, EntitlementCache.class, UsuarioCache.class,
+        InvalidationBus.class, PaymentServiceIdempotencyTest.RecordingConfig.class})
+@TestPropertySource(properties = {"cache.bus.enabled=false", "stripe.webhook.secret=whsec_test"})
+class PaymentServiceIdempotencyTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    private static final long INITIAL = 10;
+    private static final long WINS_PACK = 50;
+    private static final Set<String> WRITES = Set.of("insert", "update", "findAndModify", "delete");
+
+    @TestConfiguration
+    static class RecordingConfig {
+        @Bean
+        CommandRecorder commandRecorder() {
+            return new CommandRecorder();
+        }
+
+        @Bean
+        MongoClientSettingsBuilderCustomizer recordCommands(CommandRecorder recorder) {
+            return settings -> settings.addCommandListener(recorder);
+        }
+    }
+
+    /** Comando (nome, coleção) disparado pela thread que está gravando */
+    record Call(String command, String collection) {}
+
+    static class CommandRecorder implements CommandListener {
+        private final List<Call> calls = new CopyOnWriteArrayList<>();
+        private volatile Thread recording;
+
+        @Override
+        public void commandStarted(CommandStartedEvent event) {
+            if (Thread.currentThread() != recording) return;
+            BsonValue target = event.getCommand().get(event.getCommandName());
+            calls.add(new Call(event.getCommandName(), target != null && target.isString() ? target.asString().getValue() : null));
+        }
+    }
+
+    @Autowired
+    private PaymentService payments;
+
+    @Autowired
+    private UsuarioRepository repo;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private CommandRecorder recorder;
+
+    private String newUser() {
+        Usuario u = new Usuario();
+        u.setEmail("pay-" + UUID.randomUUID() + "@example.com");
+        u.setWins(INITIAL);
+        u.setIsPremium(false);
+        return repo.insert(u).getId();
+    }
+
+    private static Session session(String userId) {
+        Session s = new Session();
+        s.setId("cs_test_" + UUID.randomUUID());
+        s.setMetadata(Map.of("userId", userId, "productId", "wins-pack"));
+        return s;
+    }
+
+    @Test
+    void concurrentDeliveriesOfTheSameSessionCreditOnce() throws Exception {
+        String userId = newUser();
+        List<Session> sessions = new ArrayList<>();
+        List<Callable<Void>> deliveries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Session s = session(userId);
+            sessions.add(s);
+            for (int copy = 0; copy < 8; copy++) {
+                deliveries.add(() -> {
+                    payments.applyCheckoutSession(s);
+                    return null;
+                });
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            for (Future<Void> f : pool.invokeAll(deliveries)) {
+                f.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(repo.findById(userId).orElseThrow().getWins()).isEqualTo(INITIAL + sessions.size() * WINS_PACK);
+        assertThat(mongoTemplate.count(new Query(Criteria.where("userId").is(userId)), ProcessedPayment.class))
+                .isEqualTo(sessions.size());
+        assertThat(mongoTemplate.count(new Query(Criteria.where("userId").is(userId)), WinsLedgerEntry.class))
+                .isEqualTo(sessions.size());
+    }
+
+    @Test
+    void aPaymentIsTheClaimPlusOneCreditAndARedeliveryIsOneInsert() {
+        String userId = newUser();
+        payments.applyCheckoutSession(session(userId)); // primeiro lançamento semeia o snapshot do ledger
+        Session s = session(userId);
+
+        List<Call> first = writes(() -> payments.applyCheckoutSession(s));
+        List<Call> redelivery = writes(() -> payments.applyCheckoutSession(s));
+
+        assertThat(first).containsExactly(
+                new Call("insert", "processed_payments"),
+                new Call("findAndModify", "usuarios"),
+                new Call("insert", "wins_ledger"));
+        assertThat(redelivery).containsExactly(new Call("insert", "processed_payments"));
+    }
+
+    @Test
+    void aFailedCreditMarksTheClaimAndIsNotRetried() {
+        Session s = session("usuario-inexistente");
+
+        assertThatThrownBy(() -> payments.applyCheckoutSession(s)).isInstanceOf(IllegalArgumentException.class);
+        ProcessedPayment claim = mongoTemplate.findById(s.getId(), ProcessedPayment.class);
+        assertThat(claim.getStatus()).isEqualTo(ProcessedPayment.Status.FAILED);
+        assertThat(claim.getError()).isNotBlank();
+
+        payments.applyCheckoutSession(s); // reentrega: já reivindicada, não tenta de novo
+        assertThat(payments.getUserPaymentHistory("usuario-inexistente", 10, null, null)).isEmpty();
+    }
+
+    /** Escritas que a ação mandou ao Mongo na thread do teste */
+    private List<Call> writes(Runnable action) {
+        recorder.calls.clear();
+        recorder.recording = Thread.currentThread();
+        try {
+            action.run();
+        } finally {
+            recorder.recording = null;
+        }
+        return recorder.calls.stream().filter(c -> WRITES.contains(c.command())).toList();
+    }
+}
@@ -0,0 +1,242 @@
+package ai.startup.usuario.payment;
+
+import ai.startup.usuario.auth.JwtService;
+import ai.startup.usuario.email.EmailService;
+import ai.startup.usuario.usuario.Usuario;
+import ai.startup.usuario.usuario.UsuarioRepository;
+import ai.startup.usuario.wins.WinsReconcileDTO;
+import ai.startup.usuario.wins.WinsService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Teste de carga do fluxo de pagamento ponta a ponta contra o stand-in do Stripe
+ * (profile stripe-stub, stripe.api.base apontando para esta mesma instância).
+ *
+ * Cada compra: cria a sessão de checkout, simula o pagamento com o webhook
+ * checkout.session.completed entregue várias vezes com o mesmo event id e segue o
+ * redirecionamento /payments/success mais de uma vez. As compras de todos os usuários rodam
+ * embaralhadas em paralelo. No fim imprime p50/p95/p99 por etapa e confere que cada sessão
+ * creditou os wins uma única vez.
+ *
+ * Tamanho ajustável: -Dloadtest.users=20 -Dloadtest.purchases=5 -Dloadtest.threads=32
+ * -Dloadtest.deliveries=3 -Dloadtest.redirects=2
+ */
+@Testcontainers
+@ActiveProfiles("stripe-stub")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT, properties = {
+        "jwt.secret=bG9hZC10ZXN0LXNlY3JldC1rZXktcGFyYS1vLXN0dWIh",
+        "stripe.secret.key=sk_test_stub",
+        "stripe.webhook.secret=whsec_load_test",
+        "stripe.webhook.poll-ms=200",
+        "sendgrid.api.key=SG.dummy",
+        "sendgrid.from.email=noreply@example.com",
+        "sendgrid.from.name=Test",
+        "support.notification.email=support@example.com",
+        "cache.bus.enabled=false",
+        "ratelimit.enabled=false"
+})
+class StripeCheckoutLoadTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    private static final int USERS = Integer.getInteger("loadtest.users", 20);
+    private static final int PURCHASES = Integer.getInteger("loadtest.purchases", 5);
+    private static final int THREADS = Integer.getInteger("loadtest.threads", 32);
+    private static final int DELIVERIES = Integer.getInteger("loadtest.deliveries", 3);
+    private static final int REDIRECTS = Integer.getInteger("loadtest.redirects", 2);
+
+    private static final long INITIAL_WINS = 10;
+    private static final long WINS_PACK = 50;
+    private static final int PORT = freePort();
+
+    // o SDK do Stripe e o stub precisam da porta antes da subida (o stub entrega webhooks aqui mesmo)
+    @DynamicPropertySource
+    static void stripeStub(DynamicPropertyRegistry registry) {
+        registry.add("server.port", () -> PORT);
+        registry.add("stripe.api.base", () -> "http://localhost:" + PORT + "/stripe-stub");
+    }
+
+    private static int freePort() {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @MockitoBean
+    private EmailService emailService;
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Autowired
+    private UsuarioRepository repo;
+
+    @Autowired
+    private JwtService jwt;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private WinsService winsService;
+
+    private final Map<String, ConcurrentLinkedQueue<Long>> latencies = new ConcurrentHashMap<>();
+
+    @Test
+    void concurrentCheckoutsWithRepeatedWebhooksAndRedirectsCreditEachSessionOnce() throws Exception {
+        List<Usuario> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            Usuario u = new Usuario();
+            u.setEmail("load" + i + "@example.com");
+            u.setNome("Load");
+            u.setPermissao("USER");
+            u.setWins(INITIAL_WINS);
+            u.setIsPremium(false);
+            users.add(repo.insert(u));
+        }
+
+        List<Callable<String>> purchases = new ArrayList<>();
+        for (Usuario u : users) {
+            String bearer = "Bearer " + jwt.gerarToken(u);
+            for (int p = 0; p < PURCHASES; p++) {
+                purchases.add(() -> purchase(bearer));
+            }
+        }
+        Collections.shuffle(purchases);
+
+        List<String> sessions = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        long started = System.nanoTime();
+        try {
+            for (Future<String> f : pool.invokeAll(purchases)) {
+                sessions.add(f.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+
+        // webhooks são processados pelos workers do inbox: espera esvaziar
+        await().atMost(Duration.ofSeconds(60)).pollInterval(Duration.ofMillis(200)).until(() ->
+                mongoTemplate.count(new Query(Criteria.where("status").in(
+                        StripeWebhookEvent.Status.PENDING, StripeWebhookEvent.Status.PROCESSING)), StripeWebhookEvent.class) == 0);
+
+        report(sessions.size(), elapsedMs);
+
+        assertThat(sessions).doesNotHaveDuplicates().hasSize(USERS * PURCHASES);
+        assertThat(mongoTemplate.count(new Query(Criteria.where("status").is(StripeWebhookEvent.Status.FAILED)),
+                StripeWebhookEvent.class)).isZero();
+        assertThat(mongoTemplate.count(new Query(Criteria.where("_id").in(sessions)), ProcessedPayment.class))
+                .isEqualTo(sessions.size());
+        assertThat(mongoTemplate.count(new Query(Criteria.where("status").is(ProcessedPayment.Status.FAILED)),
+                ProcessedPayment.class)).isZero();
+
+        for (Usuario u : users) {
+            Usuario after = repo.findById(u.getId()).orElseThrow();
+            assertThat(after.getWins())
+                    .as("wins de " + u.getEmail())
+                    .isEqualTo(INITIAL_WINS + PURCHASES * WINS_PACK);
+            WinsReconcileDTO reconcile = winsService.reconcile(u.getId());
+            assertThat(reconcile.consistent()).as("ledger " + reconcile).isTrue();
+        }
+    }
+
+    /** Uma compra completa; devolve o id da sessão */
+    private String purchase(String bearer) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("Authorization", bearer);
+        CheckoutRequestDTO body = new CheckoutRequestDTO("wins-pack",
+                "http://localhost:5173/payment/success", "http://localhost:5173/payment/cancel");
+
+        ResponseEntity<CheckoutResponseDTO> checkout = timed("checkout", () -> rest.exchange(
+                "/payments/create-checkout-session", HttpMethod.POST, new HttpEntity<>(body, headers),
+                CheckoutResponseDTO.class));
+        assertThat(checkout.getStatusCode().value()).isEqualTo(200);
+        String sessionId = checkout.getBody().sessionId();
+
+        // pagamento: o stub envia checkout.session.completed DELIVERIES vezes (mesmo event id)
+        ResponseEntity<Map> completed = timed("webhook x" + DELIVERIES, () -> rest.postForEntity(
+                "/stripe-stub/test/sessions/{id}/complete?deliveries={n}", null, Map.class, sessionId, DELIVERIES));
+        assertThat(completed.getStatusCode().value()).isEqualTo(200);
+        assertThat((List<Integer>) completed.getBody().get("webhookStatuses")).containsOnly(200);
+
+        // redirecionamento de volta do checkout (o usuário pode recarregar a página)
+        for (int i = 0; i < REDIRECTS; i++) {
+            ResponseEntity<String> success = timed("success", () -> rest.getForEntity(
+                    "/payments/success?session_id={id}", String.class, sessionId));
+            assertThat(success.getStatusCode().value()).isEqualTo(200);
+        }
+        return sessionId;
+    }
+
+    private <T> T timed(String step, Callable<T> call) {
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } catch (Exception e) {
+            throw new IllegalStateException(step + " falhou", e);
+        } finally {
+            latencies.computeIfAbsent(step, k -> new ConcurrentLinkedQueue<>())
+                    .add((System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private void report(int purchases, long elapsedMs) {
+        System.out.println("[LoadTest] " + purchases + " compras de " + USERS + " usuários em " + elapsedMs + " ms ("
+                + THREADS + " threads, " + DELIVERIES + " entregas de webhook, " + REDIRECTS + " redirects por compra)");
+        latencies.forEach((step, values) -> {
+            List<Long> sorted = new ArrayList<>(values);
+            Collections.sort(sorted);
+            System.out.println("[LoadTest] " + step + ": n=" + sorted.size()
+                    + " p50=" + percentile(sorted, 50) + "ms p95=" + percentile(sorted, 95)
+                    + "ms p99=" + percentile(sorted, 99) + "ms max=" + sorted.get(sorted.size() - 1) + "ms");
+        });
+    }
+
+    private static long percentile(List<Long> sorted, int p) {
+        int idx = (int) Math.ceil(p / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(idx, sorted.size() - 1)));
+    }
+}
@@ -0,0 +1,90 @@
+package ai.startup.usuario.ranking;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Duas instâncias sobre o mesmo Mongo: o XP registrado numa aparece no ranking
+ * semanal/mensal da outra depois da releitura, sem virada de período.
+ */
+@Testcontainers
+@DataMongoTest
+class XpWindowServiceSyncTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private XpWindowService nodeA;
+    private XpWindowService nodeB;
+
+    @BeforeEach
+    void start() {
+        mongoTemplate.dropCollection(XpBucket.class);
+        // agendamentos longos: o teste chama sync() diretamente
+        nodeA = new XpWindowService(mongoTemplate, 3_600_000, 3_600_000);
+        nodeB = new XpWindowService(mongoTemplate, 3_600_000, 3_600_000);
+        nodeA.seed();
+        nodeB.seed();
+    }
+
+    @AfterEach
+    void stop() {
+        nodeA.stop();
+        nodeB.stop();
+    }
+
+    @Test
+    void xpRecordedOnAnotherNodeShowsUpAfterTheIncrementalRefresh() {
+        nodeA.recordXpDelta("u1", 30);
+        nodeA.recordXpDelta("u2", 10);
+        for (XpWindow w : XpWindow.values()) {
+            assertThat(nodeB.board(w).get("u1")).isNull();
+        }
+
+        nodeB.sync(false);
+        nodeA.recordXpDelta("u2", 50);
+        nodeB.sync(false);
+
+        for (XpWindow w : XpWindow.values()) {
+            Leaderboard board = nodeB.board(w);
+            assertThat(board.get("u1").primary()).isEqualTo(30);
+            assertThat(board.get("u2").primary()).isEqualTo(60);
+            assertThat(board.top(1).get(0).userId()).isEqualTo("u2");
+        }
+    }
+
+    @Test
+    void theFullReloadAppliesBucketsWithoutUpdatedAt() {
+        // bucket gravado antes de updatedAt existir: só a releitura completa o vê
+        for (XpWindow w : XpWindow.values()) {
+            String period = w.period(LocalDate.now());
+            mongoTemplate.insert(new XpBucket("u3:" + w.name() + ":" + period, "u3", w.name(), period, 70L, null, null));
+        }
+
+        nodeB.sync(false);
+        for (XpWindow w : XpWindow.values()) {
+            assertThat(nodeB.board(w).get("u3")).isNull();
+        }
+
+        nodeB.sync(true);
+        for (XpWindow w : XpWindow.values()) {
+            assertThat(nodeB.board(w).get("u3").primary()).isEqualTo(70);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package ai.startup.usuario.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RouteTable x varredura com AntPathMatcher (como o SecurityFilter fazia antes) sobre o mix
+ * de rotas reais da API. Cada operação decide o acesso de todas as requisições do mix.
+ *
+ * Rodar: mvn test-compile e depois o main desta classe (classpath de teste), ou
+ * java -cp target/test-classes:... org.openjdk.jmh.Main RouteTableBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteTableBenchmark {
+
+    /** Mix de (método, path) aproximando o tráfego real: leitura do próprio perfil domina */
+    static final String[][] MIX = {
+        {"GET", "/users/me"},
+        {"GET", "/users/me"},
+        {"GET", "/users/me"},
+        {"GET", "/users/me/entitlements"},
+        {"GET", "/users/665f1c2e9a1b2c3d4e5f6a7b/public"},
+        {"GET", "/ranking/xp"},
+        {"GET", "/ranking/xp/me"},
+        {"GET", "/ranking/streak"},
+        {"GET", "/users/665f1c2e9a1b2c3d4e5f6a7b/badges"},
+        {"PUT", "/users/665f1c2e9a1b2c3d4e5f6a7b/badges/streak-7/progress"},
+        {"GET", "/users/665f1c2e9a1b2c3d4e5f6a7b/privacy"},
+        {"POST", "/internal/xp-events"},
+        {"POST", "/internal/xp-events"},
+        {"POST", "/auth/login"},
+        {"POST", "/auth/logout"},
+        {"POST", "/auth/register"},
+        {"POST", "/auth/send-verification-code"},
+        {"POST", "/payments/create-checkout-session"},
+        {"GET", "/payments/success"},
+        {"POST", "/payments/webhook"},
+        {"GET", "/payments/history/665f1c2e9a1b2c3d4e5f6a7b"},
+        {"POST", "/users/me/spend-wins"},
+        {"PUT", "/users/665f1c2e9a1b2c3d4e5f6a7b"},
+        {"DELETE", "/users/665f1c2e9a1b2c3d4e5f6a7b"},
+        {"POST", "/users"},
+        {"GET", "/admin/metrics"},
+        {"GET", "/admin/xp-jobs/6660a1b2c3d4e5f6a7b8c9d0"},
+        {"POST", "/support/messages"},
+        {"GET", "/swagger-ui/index.html"},
+        {"GET", "/v3/api-docs/swagger-config"},
+        {"GET", "/actuator/health"},
+    };
+
+    // regras como eram avaliadas antes: lista de públicos + regras de ADMIN, uma por uma
+    static final List<String> PUBLIC_PATTERNS = List.of(
+        "/auth/login", "/auth/register", "/auth/logout", "/auth/send-verification-code",
+        "/auth/verify-email-code", "/auth/forgot-password", "/auth/reset-password",
+        "/payments/webhook", "/payments/success", "/internal/xp-events",
+        "/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html", "/actuator/health");
+
+    static final String[][] ADMIN_RULES = {
+        {"DELETE", "/users/**"},
+        {"POST", "/users"},
+        {"GET", "/admin/metrics"},
+        {"GET", "/admin/wins/**"},
+        {"POST", "/admin/recalculate-all-xp"},
+        {"GET", "/admin/xp-jobs/**"},
+        {"POST", "/admin/xp-jobs/**"},
+    };
+
+    private final RouteTable routes = SecurityFilter.routes(false);
+    private final AntPathMatcher matcher = new AntPathMatcher();
+
+    static RouteTable.Access antMatch(AntPathMatcher matcher, String method, String path) {
+        for (String p : PUBLIC_PATTERNS) {
+            if (matcher.match(p, path)) return RouteTable.Access.PUBLIC;
+        }
+        for (String[] rule : ADMIN_RULES) {
+            if (rule[0].equalsIgnoreCase(method) && matcher.match(rule[1], path)) return RouteTable.Access.ADMIN;
+        }
+        return RouteTable.Access.AUTHENTICATED;
+    }
+
+    @Benchmark
+    public void routeTable(Blackhole bh) {
+        for (String[] r : MIX) {
+            bh.consume(routes.resolve(r[0], r[1]));
+        }
+    }
+
+    @Benchmark
+    public void antPathMatcher(Blackhole bh) {
+        for (String[] r : MIX) {
+            bh.consume(antMatch(matcher, r[0], r[1]));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RouteTableBenchmark.class.getSimpleName())
+                .addProfiler("gc") // alocação por operação (RouteTable deve ficar em ~0 B/op)
+                .build()).run();
+    }
+}
@@ -0,0 +1,45 @@
+package ai.startup.usuario.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.AntPathMatcher;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RouteTableTest {
+
+    private final RouteTable routes = SecurityFilter.routes(false);
+
+    @Test
+    void decidesLikeTheAntPathMatcherScanForTheRealMix() {
+        AntPathMatcher matcher = new AntPathMatcher();
+        for (String[] r : RouteTableBenchmark.MIX) {
+            assertThat(routes.resolve(r[0], r[1]))
+                    .as(r[0] + " " + r[1])
+                    .isEqualTo(RouteTableBenchmark.antMatch(matcher, r[0], r[1]));
+        }
+    }
+
+    @Test
+    void prefixPatternsMatchTheBarePrefixAndSubpaths() {
+        assertThat(routes.resolve("GET", "/swagger-ui")).isEqualTo(RouteTable.Access.PUBLIC);
+        assertThat(routes.resolve("GET", "/swagger-ui/")).isEqualTo(RouteTable.Access.PUBLIC);
+        assertThat(routes.resolve("GET", "/swagger-ui/a/b/c.js")).isEqualTo(RouteTable.Access.PUBLIC);
+        assertThat(routes.resolve("GET", "/swagger-uix")).isEqualTo(RouteTable.Access.AUTHENTICATED);
+    }
+
+    @Test
+    void adminRulesDependOnTheMethodCaseInsensitively() {
+        assertThat(routes.resolve("DELETE", "/users/abc")).isEqualTo(RouteTable.Access.ADMIN);
+        assertThat(routes.resolve("delete", "/users/abc")).isEqualTo(RouteTable.Access.ADMIN);
+        assertThat(routes.resolve("GET", "/users/abc")).isEqualTo(RouteTable.Access.AUTHENTICATED);
+        assertThat(routes.resolve("POST", "/users")).isEqualTo(RouteTable.Access.ADMIN);
+        assertThat(routes.resolve("POST", "/users/me/spend-wins")).isEqualTo(RouteTable.Access.AUTHENTICATED);
+    }
+
+    @Test
+    void stripeStubIsPublicOnlyWithTheProfile() {
+        assertThat(routes.resolve("POST", "/stripe-stub/v1/checkout/sessions")).isEqualTo(RouteTable.Access.AUTHENTICATED);
+        assertThat(SecurityFilter.routes(true).resolve("POST", "/stripe-stub/v1/checkout/sessions"))
+                .isEqualTo(RouteTable.Access.PUBLIC);
+    }
+}
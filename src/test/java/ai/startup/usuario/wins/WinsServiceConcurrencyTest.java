@@ -0,0 +1,166 @@
+package ai.startup.usuario.wins;
+
+import ai.startup.usuario.auth.EntitlementCache;
+import ai.startup.usuario.cache.InvalidationBus;
+import ai.startup.usuario.usuario.Usuario;
+import ai.startup.usuario.usuario.UsuarioCache;
+import ai.startup.usuario.usuario.UsuarioRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.server.ResponseStatusException;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Milhares de créditos e débitos simultâneos no mesmo usuário: nenhum update se perde,
+ * o saldo nunca fica negativo e o ledger fecha com o saldo final. As primeiras operações
+ * de cada usuário já correm em paralelo: o snapshot semeado tem que ser o saldo legado.
+ */
+@Testcontainers
+@DataMongoTest
+@Import({WinsService.class, WinsLedger.class, EntitlementCache.class, UsuarioCache.class, InvalidationBus.class})
+@TestPropertySource(properties = "cache.bus.enabled=false")
+class WinsServiceConcurrencyTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    private static final int THREADS = 32;
+    private static final int CREDITS = 2000;
+    private static final int DEBITS = 2000;
+    private static final long CREDIT = 5;
+    private static final long COST = 7;
+    private static final long INITIAL = 1000;
+
+    @Autowired
+    private WinsService wins;
+
+    @Autowired
+    private WinsLedger ledger;
+
+    @Autowired
+    private UsuarioRepository repo;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Test
+    void parallelCreditsAndDebitsKeepTheBalanceConsistent() throws Exception {
+        Usuario u = new Usuario();
+        u.setEmail("stress@example.com");
+        u.setWins(INITIAL);
+        String userId = repo.insert(u).getId(); // sem snapshot: a corrida começa no primeiro lançamento
+
+        AtomicLong credited = new AtomicLong();
+        AtomicLong debited = new AtomicLong();
+        AtomicLong rejectedDebits = new AtomicLong();
+        AtomicLong minSeen = new AtomicLong(Long.MAX_VALUE);
+
+        List<Callable<Void>> ops = new ArrayList<>();
+        for (int i = 0; i < CREDITS; i++) {
+            // metade com referência (como as compras), metade sem
+            String reference = i % 2 == 0 ? "cs_" + i : null;
+            ops.add(() -> {
+                Usuario after = wins.credit(userId, CREDIT, WinsSource.STRIPE, reference);
+                credited.addAndGet(CREDIT);
+                minSeen.accumulateAndGet(after.getWins(), Math::min);
+                return null;
+            });
+        }
+        for (int i = 0; i < DEBITS; i++) {
+            ops.add(() -> {
+                try {
+                    Usuario after = wins.debit(userId, COST);
+                    debited.addAndGet(COST);
+                    minSeen.accumulateAndGet(after.getWins(), Math::min);
+                } catch (ResponseStatusException e) {
+                    rejectedDebits.incrementAndGet(); // saldo insuficiente naquele instante
+                }
+                return null;
+            });
+        }
+        Collections.shuffle(ops);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (Future<Void> f : pool.invokeAll(ops)) {
+                f.get(); // propaga qualquer falha inesperada
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long expected = INITIAL + credited.get() - debited.get();
+        long balance = repo.findById(userId).orElseThrow().getWins();
+
+        assertThat(balance).isEqualTo(expected);
+        assertThat(minSeen.get()).isGreaterThanOrEqualTo(0);
+        assertThat(debited.get() / COST + rejectedDebits.get()).isEqualTo(DEBITS);
+
+        WinsReconcileDTO reconcile = ledger.reconcile(userId, balance);
+        assertThat(reconcile.consistent()).as("ledger " + reconcile).isTrue();
+        assertThat(mongoTemplate.findById(userId, WinsSnapshot.class).getBalance()).isEqualTo(INITIAL);
+    }
+
+    @Test
+    void concurrentFirstOperationsOfLegacyUsersSeedTheSnapshotWithTheLegacyBalance() throws Exception {
+        List<String> userIds = new ArrayList<>();
+        List<Callable<Void>> ops = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Usuario u = new Usuario();
+            u.setEmail("legacy" + i + "@example.com");
+            u.setWins(INITIAL);
+            String userId = repo.insert(u).getId();
+            userIds.add(userId);
+            for (int k = 0; k < THREADS; k++) {
+                boolean credit = k % 2 == 0;
+                ops.add(() -> {
+                    if (credit) {
+                        wins.credit(userId, CREDIT, WinsSource.STRIPE, null);
+                    } else {
+                        wins.debit(userId, COST);
+                    }
+                    return null;
+                });
+            }
+        }
+
+        // sem embaralhar: as THREADS operações de cada usuário são entregues juntas ao pool,
+        // então as primeiras operações (e o seed) de um mesmo usuário correm em paralelo
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (Future<Void> f : pool.invokeAll(ops)) {
+                f.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long perUser = INITIAL + (THREADS / 2) * (CREDIT - COST);
+        for (String userId : userIds) {
+            assertThat(repo.findById(userId).orElseThrow().getWins()).isEqualTo(perUser);
+            assertThat(mongoTemplate.findById(userId, WinsSnapshot.class).getBalance())
+                    .as("snapshot semeado de " + userId).isEqualTo(INITIAL);
+            WinsReconcileDTO reconcile = ledger.reconcile(userId, perUser);
+            assertThat(reconcile.consistent()).as("ledger " + reconcile).isTrue();
+        }
+    }
+}